@@ -0,0 +1,133 @@
+package ca.uwaterloo.cs349.pdfreader;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.pdf.PdfRenderer;
+import android.os.Build;
+import android.os.SystemClock;
+import androidx.annotation.RequiresApi;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SdkSuppress;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// Page throughput of a RendererPool with the default number of renderers against a single
+// one, on the bundled paper, on a real device. This is what decides whether the extra
+// renderers pay off, in particular from API 26 where they share one PdfRenderer.
+// Rates are printed, not asserted; compare them across devices and API levels.
+@RunWith(AndroidJUnit4.class)
+@SdkSuppress(minSdkVersion = Build.VERSION_CODES.LOLLIPOP)
+@RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+public class RendererPoolBenchmark {
+
+    static final String FILENAME = "shannon1948.pdf";
+    static final int PAGES = 30;
+    static final int WIDTH = 1080;
+    // each configuration is timed this many times, alternating, and the best run counts
+    static final int ROUNDS = 3;
+    static final long TIMEOUT_SECONDS = 120;
+
+    private Context context;
+    private Document document;
+
+    @Before
+    public void stage() throws IOException {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        File target = new File(context.getCacheDir(), FILENAME);
+        DocumentStager.stage(context.getResources().openRawResource(R.raw.shannon1948), target);
+        document = Document.fromFile(target, FILENAME);
+    }
+
+    @Test
+    public void defaultCountAgainstOneRenderer() throws Exception {
+        int count = RendererPool.defaultCount(context);
+        double pooled = 0;
+        double single = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            pooled = Math.max(pooled, pagesPerSecond(count));
+            single = Math.max(single, pagesPerSecond(1));
+        }
+        System.out.println("API " + Build.VERSION.SDK_INT + ", " + Runtime.getRuntime().availableProcessors()
+                + " cores, " + PAGES + " pages at " + WIDTH + "px");
+        System.out.println(String.format("%d renderers: %.1f pages/s", count, pooled));
+        System.out.println(String.format("1 renderer: %.1f pages/s", single));
+        System.out.println(String.format("speedup: %.2fx", pooled / single));
+    }
+
+    // render PAGES pages on count renderers and return how many came back per second
+    private double pagesPerSecond(final int count) throws Exception {
+        final BitmapPool pool = new BitmapPool(0);
+        final Metrics metrics = new Metrics();
+        final CountDownLatch done = new CountDownLatch(PAGES);
+        final PageRenderer.Callback callback = new PageRenderer.Callback() {
+            @Override
+            public void onPageRendered(PageCache.Key key, Bitmap bitmap) {
+                pool.release(bitmap);
+                done.countDown();
+            }
+
+            @Override
+            public void onTileRendered(TileManager.Key key, Bitmap tile) {
+            }
+
+            @Override
+            public void onThumbnailRendered(PageCache.Key key, Bitmap thumbnail) {
+            }
+        };
+        // a file where the disk cache directory would go keeps it from opening, so every page
+        // is rasterized and nothing is compressed in the background during the run
+        File cacheDir = new File(context.getCacheDir(), "benchmark");
+        if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+            throw new IOException("Unable to create " + cacheDir);
+        }
+        new FileOutputStream(new File(cacheDir, DiskPageCache.DIRECTORY)).close();
+        final DiskPageCache diskCache = new DiskPageCache(cacheDir, document, 0, DiskPageCache.DEFAULT_FORMAT,
+                pool, metrics);
+
+        // RendererPool is main thread only, and delivers there
+        final RendererPool[] renderer = new RendererPool[1];
+        final IOException[] failure = new IOException[1];
+        final long[] start = new long[1];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    renderer[0] = new RendererPool(document, count, pool, diskCache, metrics, callback);
+                } catch (IOException ex) {
+                    failure[0] = ex;
+                    return;
+                }
+                start[0] = SystemClock.elapsedRealtime();
+                for (int i = 0; i < PAGES; i++) {
+                    renderer[0].render(new PageCache.Key(i, WIDTH, PdfRenderer.Page.RENDER_MODE_FOR_DISPLAY), false);
+                }
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        assertEquals(count, renderer[0].size());
+        assertTrue("renders did not finish", done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        long elapsed = SystemClock.elapsedRealtime() - start[0];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                renderer[0].close();
+            }
+        });
+        System.out.println(count + " renderers, " + elapsed + "ms:\n" + metrics.snapshot());
+        return PAGES * 1000.0 / Math.max(1, elapsed);
+    }
+}
@@ -0,0 +1,131 @@
+package ca.uwaterloo.cs349.pdfreader;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+// Pool of page-sized bitmaps, bucketed by width/height/config.
+// Bitmaps that fall out of the page cache come back here and are handed out again
+// for the next render, so paging in steady state does not allocate.
+// Shared between the main thread (release) and the render thread (acquire).
+// When full, the bitmaps pooled longest ago make room, whatever their size, so bitmaps
+// of a size no longer rendered (after a rotation, say) do not hold the pool forever.
+public class BitmapPool implements MemoryBudget.Trimmable, Metrics.Source {
+
+    final String LOGNAME = "bitmap_pool";
+
+    private final HashMap<Long, ArrayDeque<Bitmap>> buckets = new HashMap<>();
+    // every pooled bitmap, least recently released first
+    private final LinkedHashSet<Bitmap> order = new LinkedHashSet<>();
+    private final int maxBytes;
+    private int pooledBytes = 0;
+
+    // metrics
+    private int reused = 0;
+    private int allocated = 0;
+    private int dropped = 0;
+
+    public BitmapPool(int maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    private static long bucket(int width, int height, Bitmap.Config config) {
+        return ((long) width << 36) | ((long) height << 8) | config.ordinal();
+    }
+
+    // hand out a cleared bitmap of exactly this size, allocating only if the bucket is empty
+    public synchronized Bitmap acquire(int width, int height, Bitmap.Config config) {
+        ArrayDeque<Bitmap> bitmaps = buckets.get(bucket(width, height, config));
+        if (bitmaps != null && !bitmaps.isEmpty()) {
+            Bitmap bitmap = bitmaps.pop();
+            order.remove(bitmap);
+            pooledBytes -= bitmap.getByteCount();
+            reused++;
+            // PdfRenderer draws on top of what is there, so start from a transparent page
+            bitmap.eraseColor(Color.TRANSPARENT);
+            return bitmap;
+        }
+        allocated++;
+        return Bitmap.createBitmap(width, height, config);
+    }
+
+    // give a bitmap back; it must not be displayed or cached anywhere after this
+    public synchronized void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) {
+            return;
+        }
+        int size = bitmap.getByteCount();
+        if (size > maxBytes) {
+            // would not fit even in an empty pool, let this one go
+            dropped++;
+            bitmap.recycle();
+            return;
+        }
+        while (pooledBytes + size > maxBytes) {
+            evictOldest();
+        }
+        long key = bucket(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+        ArrayDeque<Bitmap> bitmaps = buckets.get(key);
+        if (bitmaps == null) {
+            bitmaps = new ArrayDeque<>();
+            buckets.put(key, bitmaps);
+        }
+        bitmaps.push(bitmap);
+        order.add(bitmap);
+        pooledBytes += size;
+    }
+
+    // recycle the bitmap pooled longest ago, from whichever bucket holds it
+    private void evictOldest() {
+        Iterator<Bitmap> oldest = order.iterator();
+        Bitmap bitmap = oldest.next();
+        oldest.remove();
+        long key = bucket(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+        ArrayDeque<Bitmap> bitmaps = buckets.get(key);
+        // buckets are stacks, so the oldest of a bucket is at its bottom
+        bitmaps.removeLastOccurrence(bitmap);
+        if (bitmaps.isEmpty()) {
+            buckets.remove(key);
+        }
+        pooledBytes -= bitmap.getByteCount();
+        dropped++;
+        bitmap.recycle();
+    }
+
+    // drop everything that is pooled
+    public synchronized void clear() {
+        for (ArrayDeque<Bitmap> bitmaps : buckets.values()) {
+            for (Bitmap bitmap : bitmaps) {
+                bitmap.recycle();
+            }
+        }
+        buckets.clear();
+        order.clear();
+        pooledBytes = 0;
+        Log.d(LOGNAME, "cleared");
+    }
+
+    @Override
+    public synchronized int getRetainedBytes() {
+        return pooledBytes;
+    }
+
+    @Override
+    public synchronized void trim(float fraction) {
+        int limit = (int) (maxBytes * fraction);
+        while (pooledBytes > limit) {
+            evictOldest();
+        }
+    }
+
+    @Override
+    public synchronized String stats() {
+        return "reused=" + reused + " allocated=" + allocated + " dropped=" + dropped
+                + " bytes=" + pooledBytes + "/" + maxBytes;
+    }
+}
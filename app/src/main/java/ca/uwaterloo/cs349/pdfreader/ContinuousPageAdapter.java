@@ -0,0 +1,159 @@
+package ca.uwaterloo.cs349.pdfreader;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.SparseArray;
+import android.view.ViewGroup;
+import androidx.recyclerview.widget.RecyclerView;
+
+// Pages of the continuous scroll mode, one PDFimage per page.
+// RecyclerView only keeps views for the pages on screen (plus a few it lays out ahead),
+// and a page's bitmap is only held while its view is bound, so memory stays bounded
+// however long the document is. Every view shares the annotations of the main PDFimage.
+public class ContinuousPageAdapter extends RecyclerView.Adapter<ContinuousPageAdapter.PageHolder> {
+
+    // where page bitmaps come from, implemented by MainActivity
+    public interface PageSource {
+        // returns the cached render of a page and pins it, or queues a render and returns null
+        Bitmap acquirePage(int index);
+
+        // the view showing this bitmap let go of it
+        void releasePage(Bitmap bitmap);
+    }
+
+    static class PageHolder extends RecyclerView.ViewHolder {
+        final PDFimage image;
+        int index = -1;
+        Bitmap bitmap;
+
+        PageHolder(PDFimage image) {
+            super(image);
+            this.image = image;
+        }
+    }
+
+    private final Context context;
+    private final PDFimage owner;
+    private final PageSource source;
+    private final int pageCount;
+    private final SparseArray<PageHolder> bound = new SparseArray<>();
+    private Tool tool;
+    private boolean partialErase;
+    // height of a page relative to its width, for sizing pages that are not rendered yet
+    // until the geometry is known, the last rendered page stands in for every page
+    private float pageAspect = RenderSizePolicy.DEFAULT_PAGE_ASPECT;
+    private PageGeometry geometry;
+
+    public ContinuousPageAdapter(Context context, PDFimage owner, PageSource source, int pageCount) {
+        this.context = context;
+        this.owner = owner;
+        this.source = source;
+        this.pageCount = pageCount;
+        this.tool = owner.tool;
+        this.partialErase = owner.partialErase;
+    }
+
+    @Override
+    public PageHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        PDFimage image = new PDFimage(context);
+        image.shareAnnotations(owner);
+        image.setAdjustViewBounds(true);
+        image.setLayoutParams(new RecyclerView.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
+                ViewGroup.LayoutParams.WRAP_CONTENT));
+        return new PageHolder(image);
+    }
+
+    @Override
+    public void onBindViewHolder(PageHolder holder, int position) {
+        release(holder);
+        holder.index = position;
+        bound.put(position, holder);
+        holder.image.setCurrentIndex(position);
+        if (tool != null) {
+            holder.image.setTool(tool);
+        }
+        holder.image.setPartialErase(partialErase);
+        holder.image.setMinimumHeight(placeholderHeight(position));
+        show(holder, source.acquirePage(position));
+    }
+
+    @Override
+    public void onViewRecycled(PageHolder holder) {
+        release(holder);
+    }
+
+    @Override
+    public int getItemCount() {
+        return pageCount;
+    }
+
+    private int placeholderHeight(int index) {
+        float aspect = geometry != null ? geometry.getAspect(index) : pageAspect;
+        return Math.round(context.getResources().getDisplayMetrics().widthPixels * aspect);
+    }
+
+    // exact page sizes are known now, resize the pages on screen
+    public void setGeometry(PageGeometry geometry) {
+        this.geometry = geometry;
+        for (int i = 0; i < bound.size(); i++) {
+            bound.valueAt(i).image.setMinimumHeight(placeholderHeight(bound.keyAt(i)));
+        }
+    }
+
+    private void show(PageHolder holder, Bitmap bitmap) {
+        holder.bitmap = bitmap;
+        holder.image.setImage(bitmap);
+        if (bitmap != null) {
+            pageAspect = bitmap.getHeight() / (float) bitmap.getWidth();
+        }
+    }
+
+    private void release(PageHolder holder) {
+        if (holder.index >= 0 && bound.get(holder.index) == holder) {
+            bound.remove(holder.index);
+        }
+        if (holder.bitmap != null) {
+            source.releasePage(holder.bitmap);
+        }
+        holder.bitmap = null;
+        holder.image.setImage(null);
+        holder.index = -1;
+    }
+
+    // let go of every bitmap, before the adapter is dropped
+    public void releaseAll() {
+        while (bound.size() > 0) {
+            release(bound.valueAt(0));
+        }
+    }
+
+    // a render finished; show it if that page is bound and still blank
+    public void onPageRendered(int index) {
+        PageHolder holder = bound.get(index);
+        if (holder != null && holder.bitmap == null) {
+            show(holder, source.acquirePage(index));
+        }
+    }
+
+    // redraw the annotations of one page, after undo/redo
+    public void invalidatePage(int index) {
+        PageHolder holder = bound.get(index);
+        if (holder != null) {
+            holder.image.invalidate();
+        }
+    }
+
+    public void setTool(Tool tool) {
+        this.tool = tool;
+        for (int i = 0; i < bound.size(); i++) {
+            bound.valueAt(i).image.setTool(tool);
+        }
+    }
+
+    public void setPartialErase(boolean partialErase) {
+        this.partialErase = partialErase;
+        for (int i = 0; i < bound.size(); i++) {
+            bound.valueAt(i).image.setPartialErase(partialErase);
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package ca.uwaterloo.cs349.pdfreader;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Compressed page renders under getCacheDir(), so pages survive process death.
+// Files are named after a hash of the document's content, the kind of render, the page index
+// and the render size, so a changed document never picks up stale renders, and a thumbnail
+// never passes for a page render of the same width. Total size is kept under a
+// quota by deleting the least recently used files (by modification time).
+// Reads happen on the render threads; writes are queued on a background writer thread.
+public class DiskPageCache {
+
+    final String LOGNAME = "disk_page_cache";
+    static final String DIRECTORY = "pages";
+    static final long DEFAULT_MAX_BYTES = 32 * 1024 * 1024;
+    static final Bitmap.CompressFormat DEFAULT_FORMAT = Bitmap.CompressFormat.PNG;
+    static final int QUALITY = 100;
+    // documents up to this size are hashed whole; bigger ones by their size, start and end,
+    // which still changes with any incremental update, since those append to the file
+    static final long FULL_HASH_LIMIT = 16 * 1024 * 1024;
+    static final int SAMPLE_BYTES = 1024 * 1024;
+
+    // what a stored render was made for; thumbnails are cut to THUMBNAIL_MAX_ASPECT
+    // and kept at full quality, so they cannot stand in for pages or the other way round
+    enum Kind {
+        PAGE, THUMBNAIL
+    }
+
+    private final File directory;
+    private final Document document;
+    private final long maxBytes;
+    private final Bitmap.CompressFormat format;
+    private final BitmapPool pool;
+    private final ExecutorService writer;
+    private final Metrics metrics;
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+    private volatile String fingerprint;
+    private final AtomicBoolean opened = new AtomicBoolean();
+
+    public DiskPageCache(File cacheDir, Document document, long maxBytes, Bitmap.CompressFormat format, BitmapPool pool,
+                         Metrics metrics) {
+        this.directory = new File(cacheDir, DIRECTORY);
+        this.document = document;
+        this.maxBytes = maxBytes;
+        this.format = format;
+        this.pool = pool;
+        this.metrics = metrics;
+        writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "DiskPageCache");
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    // hash the document; reads the whole file, so call it off the main thread
+    // until this succeeds the cache misses and ignores writes
+    // safe to call from several threads, only the first call does anything
+    public void open() {
+        if (!opened.compareAndSet(false, true)) {
+            return;
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.d(LOGNAME, "Unable to create " + directory);
+            return;
+        }
+        try {
+            fingerprint = fingerprint(document);
+        } catch (IOException ex) {
+            Log.d(LOGNAME, "Unable to hash " + document.getName());
+        }
+    }
+
+    static String fingerprint(Document document) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException(ex);
+        }
+        FileInputStream input = document.openStream();
+        try {
+            final byte[] buffer = new byte[64 * 1024];
+            long length = input.getChannel().size();
+            digest.update(Long.toString(length).getBytes());
+            if (length <= FULL_HASH_LIMIT) {
+                update(digest, input, buffer, length);
+            } else {
+                update(digest, input, buffer, SAMPLE_BYTES);
+                input.getChannel().position(length - SAMPLE_BYTES);
+                update(digest, input, buffer, SAMPLE_BYTES);
+            }
+        } finally {
+            input.close();
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    // feed up to count bytes of input to the digest
+    private static void update(MessageDigest digest, InputStream input, byte[] buffer, long count) throws IOException {
+        int size;
+        while (count > 0 && (size = input.read(buffer, 0, (int) Math.min(buffer.length, count))) != -1) {
+            digest.update(buffer, 0, size);
+            count -= size;
+        }
+    }
+
+    private File fileFor(Kind kind, PageCache.Key key) {
+        String extension = format == Bitmap.CompressFormat.PNG ? ".png" : ".webp";
+        return new File(directory, fingerprint + "_" + kind.name() + "_" + key.index + "_" + key.width
+                + "_" + key.renderMode + extension);
+    }
+
+    // decode a stored render into a pooled bitmap, or return null
+    public Bitmap get(Kind kind, PageCache.Key key) {
+        if (fingerprint == null) {
+            return null;
+        }
+        File file = fileFor(kind, key);
+        if (!file.exists()) {
+            misses.incrementAndGet();
+            return null;
+        }
+        long start = metrics.begin(Metrics.DISK_READ);
+        try {
+            Bitmap bitmap = decode(file);
+            if (bitmap != null) {
+                hits.incrementAndGet();
+                // mark as recently used
+                file.setLastModified(System.currentTimeMillis());
+                Log.d(LOGNAME, "read " + kind + " " + key);
+            } else {
+                misses.incrementAndGet();
+            }
+            return bitmap;
+        } finally {
+            metrics.end(Metrics.DISK_READ, start);
+        }
+    }
+
+    // decode into a pooled bitmap, deleting files that turn out to be broken
+    private Bitmap decode(File file) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            file.delete();
+            return null;
+        }
+        options.inJustDecodeBounds = false;
+        options.inMutable = true;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inBitmap = pool.acquire(options.outWidth, options.outHeight, Bitmap.Config.ARGB_8888);
+        Bitmap bitmap;
+        try {
+            bitmap = BitmapFactory.decodeFile(file.getPath(), options);
+        } catch (IllegalArgumentException ex) {
+            // the pooled bitmap could not be reused
+            pool.release(options.inBitmap);
+            return null;
+        }
+        if (bitmap == null) {
+            pool.release(options.inBitmap);
+            file.delete();
+            return null;
+        }
+        return bitmap;
+    }
+
+    // queue a write of a fresh render
+    // the writer works on its own pooled copy, since the caller's bitmap may be recycled
+    // into another render before the write happens
+    public void put(final Kind kind, final PageCache.Key key, Bitmap bitmap) {
+        if (fingerprint == null || writer.isShutdown()) {
+            return;
+        }
+        final Bitmap copy = pool.acquire(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+        new Canvas(copy).drawBitmap(bitmap, 0, 0, null);
+        try {
+            writer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    long start = metrics.begin(Metrics.DISK_WRITE);
+                    try {
+                        write(kind, key, copy);
+                    } finally {
+                        pool.release(copy);
+                        metrics.end(Metrics.DISK_WRITE, start);
+                    }
+                    trim();
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            // closed by another render thread since the check above
+            pool.release(copy);
+        }
+    }
+
+    // runs on the writer thread
+    private void write(Kind kind, PageCache.Key key, Bitmap bitmap) {
+        File file = fileFor(kind, key);
+        File temp = new File(directory, file.getName() + ".tmp");
+        try {
+            OutputStream output = new FileOutputStream(temp);
+            try {
+                bitmap.compress(format, QUALITY, output);
+            } finally {
+                output.close();
+            }
+            if (!temp.renameTo(file)) {
+                temp.delete();
+            }
+        } catch (IOException ex) {
+            temp.delete();
+            Log.d(LOGNAME, "Unable to write " + kind + " " + key);
+        }
+    }
+
+    // runs on the writer thread
+    // delete least recently used files until the directory fits in the quota
+    private void trim() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long difference = a.lastModified() - b.lastModified();
+                return difference < 0 ? -1 : (difference > 0 ? 1 : 0);
+            }
+        });
+        for (File file : files) {
+            if (total <= maxBytes) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+            }
+        }
+    }
+
+    public String stats() {
+        return "hits=" + hits.get() + " misses=" + misses.get()
+                + " hit ratio=" + Metrics.ratio(hits.get(), misses.get());
+    }
+
+    // finish queued writes in the background and stop
+    public void close() {
+        writer.shutdown();
+    }
+}
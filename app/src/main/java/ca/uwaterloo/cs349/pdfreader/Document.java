@@ -0,0 +1,179 @@
+package ca.uwaterloo.cs349.pdfreader;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.provider.OpenableColumns;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.util.Log;
+import androidx.annotation.RequiresApi;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+// A PDF to show: a file in our cache directory, or a document another app handed us by Uri.
+// PdfRenderer reads documents in place through a seekable file descriptor, so a Uri backed
+// by a real file (most document providers) is never copied. Only descriptors that cannot
+// seek, like pipes, need staging into a file first.
+@RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+public class Document {
+
+    static final String LOGNAME = "document";
+
+    // what the main thread needs from a ready document, made on the thread that prepared it
+    // opening a descriptor waits on the provider and PdfRenderer parses the document, so
+    // neither belongs on the main thread
+    public interface Opener<T> {
+        T open(Document document) throws IOException;
+    }
+
+    public interface Listener<T> {
+        // called on the main thread, with null if the document cannot be read or opened
+        void onDocumentOpened(T opened);
+    }
+
+    private final String name;
+    private final File file;
+    private final Uri uri;
+    private final ContentResolver resolver;
+    // bytes, -1 if the provider does not say
+    private final long size;
+
+    private Document(String name, File file, Uri uri, ContentResolver resolver, long size) {
+        this.name = name;
+        this.file = file;
+        this.uri = uri;
+        this.resolver = resolver;
+        this.size = size;
+    }
+
+    public static Document fromFile(File file, String name) {
+        return new Document(name, file, null, null, file.length());
+    }
+
+    // ask the provider for the name and size it shows to the user
+    public static Document fromUri(ContentResolver resolver, Uri uri) {
+        String name = uri.getLastPathSegment();
+        long size = -1;
+        Cursor cursor = resolver.query(uri, new String[] {OpenableColumns.DISPLAY_NAME, OpenableColumns.SIZE},
+                null, null, null);
+        if (cursor != null) {
+            try {
+                if (cursor.moveToFirst()) {
+                    int nameColumn = cursor.getColumnIndex(OpenableColumns.DISPLAY_NAME);
+                    if (nameColumn >= 0 && !cursor.isNull(nameColumn)) {
+                        name = cursor.getString(nameColumn);
+                    }
+                    int sizeColumn = cursor.getColumnIndex(OpenableColumns.SIZE);
+                    if (sizeColumn >= 0 && !cursor.isNull(sizeColumn)) {
+                        size = cursor.getLong(sizeColumn);
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return new Document(name, null, uri, resolver, size);
+    }
+
+    // look up uri, make it readable by PdfRenderer and open it with opener, on a background thread
+    // asking the provider and copying a pipe both wait on another process, and the copy can
+    // be hundreds of megabytes; a document that cannot seek is staged into copy first
+    public static <T> void prepare(final ContentResolver resolver, final Uri uri, final File copy,
+                                   final Opener<T> opener, final Listener<T> listener) {
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                T opened;
+                try {
+                    Document document = fromUri(resolver, uri);
+                    if (!document.isSeekable()) {
+                        DocumentStager.stage(document.openStream(), copy);
+                        document = fromFile(copy, document.getName());
+                    }
+                    opened = opener.open(document);
+                } catch (IOException ex) {
+                    Log.d(LOGNAME, "Unable to read " + uri);
+                    opened = null;
+                } catch (SecurityException ex) {
+                    Log.d(LOGNAME, "Not allowed to read " + uri);
+                    opened = null;
+                }
+                final T result = opened;
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onDocumentOpened(result);
+                    }
+                });
+            }
+        }, "Document");
+        thread.start();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // changes whenever the document does, for naming and validating cache files
+    public String getIdentity() {
+        if (file != null) {
+            return file.getPath() + ":" + file.length() + ":" + file.lastModified();
+        }
+        return uri + ":" + size;
+    }
+
+    // where a cache file belonging to this document goes
+    // next to the document if it is ours, otherwise named after the Uri in the cache directory
+    public File companion(File cacheDir, String suffix) {
+        if (file != null) {
+            return new File(file.getParentFile(), file.getName() + suffix);
+        }
+        return new File(cacheDir, "uri_" + Integer.toHexString(uri.toString().hashCode()) + suffix);
+    }
+
+    // a new read-only descriptor; every PdfRenderer needs its own
+    public ParcelFileDescriptor open() throws IOException {
+        if (file != null) {
+            return ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+        }
+        ParcelFileDescriptor descriptor = resolver.openFileDescriptor(uri, "r");
+        if (descriptor == null) {
+            throw new IOException("No descriptor for " + uri);
+        }
+        return descriptor;
+    }
+
+    // the whole document as a stream, seekable or not
+    public FileInputStream openStream() throws IOException {
+        return new ParcelFileDescriptor.AutoCloseInputStream(open());
+    }
+
+    // true if PdfRenderer can read the document in place
+    public boolean isSeekable() {
+        if (file != null) {
+            return true;
+        }
+        try {
+            ParcelFileDescriptor descriptor = open();
+            try {
+                Os.lseek(descriptor.getFileDescriptor(), 0, OsConstants.SEEK_SET);
+                return true;
+            } finally {
+                descriptor.close();
+            }
+        } catch (ErrnoException ex) {
+            return false;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+}
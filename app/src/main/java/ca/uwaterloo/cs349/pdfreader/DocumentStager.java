@@ -0,0 +1,180 @@
+package ca.uwaterloo.cs349.pdfreader;
+
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import androidx.annotation.RequiresApi;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.zip.CRC32;
+
+// Copies a document into the cache directory, where PdfRenderer can open it.
+// The copy goes to a temporary file that is renamed into place once complete, and its size
+// and CRC-32 are recorded in a .sum file next to it. A copy cut short by a killed process
+// therefore never looks valid, and is staged again on the next launch.
+public class DocumentStager {
+
+    static final String LOGNAME = "document_stager";
+    static final String SUFFIX = ".sum";
+    static final int BUFFER_SIZE = 256 * 1024;
+
+    // where to copy from, opened only if a copy is needed
+    public interface Source {
+        InputStream open() throws IOException;
+    }
+
+    private static File sumFor(File target) {
+        return new File(target.getParentFile(), target.getName() + SUFFIX);
+    }
+
+    // true if target is a complete copy made by stage
+    // the size is checked every time; the checksum only if the file was touched since staging
+    public static boolean isStaged(File target) {
+        File sum = sumFor(target);
+        if (!target.exists() || !sum.exists()) {
+            return false;
+        }
+        long length;
+        long crc;
+        long lastModified;
+        try {
+            DataInputStream input = new DataInputStream(new FileInputStream(sum));
+            try {
+                length = input.readLong();
+                crc = input.readLong();
+                lastModified = input.readLong();
+            } finally {
+                input.close();
+            }
+        } catch (IOException ex) {
+            return false;
+        }
+        if (target.length() != length) {
+            Log.d(LOGNAME, target + " is " + target.length() + " bytes, expected " + length);
+            return false;
+        }
+        if (target.lastModified() == lastModified) {
+            return true;
+        }
+        try {
+            InputStream input = new BufferedInputStream(new FileInputStream(target), BUFFER_SIZE);
+            try {
+                return checksum(input) == crc;
+            } finally {
+                input.close();
+            }
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    private static long checksum(InputStream input) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int size;
+        while ((size = input.read(buffer)) != -1) {
+            crc.update(buffer, 0, size);
+        }
+        return crc.getValue();
+    }
+
+    // check target, and copy source to it if it is not a complete copy, then open it as the
+    // document name with opener, all on a background thread
+    // both checking and copying read the whole document when it is large, which must not hold
+    // up the main thread, and neither must opening it, see Document.Opener
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    public static <T> void stageInBackground(final Source source, final File target, final String name,
+                                             final Document.Opener<T> opener, final Document.Listener<T> listener) {
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                T opened = null;
+                try {
+                    if (!isStaged(target)) {
+                        stage(source.open(), target);
+                    }
+                    opened = opener.open(Document.fromFile(target, name));
+                } catch (IOException ex) {
+                    Log.d(LOGNAME, "Unable to stage " + target);
+                }
+                final T result = opened;
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onDocumentOpened(result);
+                    }
+                });
+            }
+        }, "DocumentStager");
+        thread.start();
+    }
+
+    // copy source to target, replacing whatever is there; closes source
+    public static void stage(InputStream source, File target) throws IOException {
+        File temp = new File(target.getPath() + ".tmp");
+        CRC32 crc = new CRC32();
+        long length = 0;
+        ReadableByteChannel input = Channels.newChannel(source);
+        try {
+            FileOutputStream stream = new FileOutputStream(temp);
+            try {
+                FileChannel output = stream.getChannel();
+                ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+                int size;
+                while ((size = input.read(buffer)) != -1) {
+                    crc.update(buffer.array(), 0, size);
+                    length += size;
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        output.write(buffer);
+                    }
+                    buffer.clear();
+                }
+                // make sure the data is on disk before the rename can be
+                output.force(false);
+            } finally {
+                stream.close();
+            }
+        } catch (IOException ex) {
+            temp.delete();
+            throw ex;
+        } finally {
+            input.close();
+        }
+
+        // no .sum while the target is being replaced, so a crash in between means restaging
+        File sum = sumFor(target);
+        sum.delete();
+        if (!temp.renameTo(target)) {
+            temp.delete();
+            throw new IOException("Unable to rename " + temp);
+        }
+        File sumTemp = new File(sum.getPath() + ".tmp");
+        DataOutputStream output = new DataOutputStream(new FileOutputStream(sumTemp));
+        try {
+            output.writeLong(length);
+            output.writeLong(crc.getValue());
+            output.writeLong(target.lastModified());
+        } finally {
+            output.close();
+        }
+        if (!sumTemp.renameTo(sum)) {
+            sumTemp.delete();
+            throw new IOException("Unable to rename " + sumTemp);
+        }
+        Log.d(LOGNAME, "staged " + length + " bytes to " + target);
+    }
+}
@@ -0,0 +1,85 @@
+package ca.uwaterloo.cs349.pdfreader;
+
+import android.os.SystemClock;
+
+// Watches how fast and in which direction the user is flipping pages, and turns that
+// into a prefetch window: someone tapping next twice a second gets several pages
+// rendered ahead, someone reading slowly gets the plain neighbours.
+// Main thread only.
+public class FlipTracker implements Metrics.Source {
+
+    // flips remembered, and how far back they count
+    static final int HISTORY = 6;
+    static final long WINDOW = 2000; // ms
+    // render enough pages ahead to cover this much flipping at the current rate
+    static final float LOOKAHEAD = 1.5f; // s
+    static final int MAX_AHEAD = 8;
+
+    private final long[] times = new long[HISTORY];
+    private final int[] directions = new int[HISTORY];
+    private int count = 0;
+    private int next = 0;
+
+    // last computed window, reported in stats()
+    private int ahead = 1;
+    private int behind = 1;
+
+    // +1 for next, -1 for previous
+    public void onFlip(int direction) {
+        times[next] = SystemClock.uptimeMillis();
+        directions[next] = direction;
+        next = (next + 1) % HISTORY;
+        count = Math.min(count + 1, HISTORY);
+    }
+
+    // flips per second over the recent window
+    public float getRate() {
+        long now = SystemClock.uptimeMillis();
+        int recent = 0;
+        for (int i = 0; i < count; i++) {
+            if (now - times[i] <= WINDOW) {
+                recent++;
+            }
+        }
+        return recent * 1000f / WINDOW;
+    }
+
+    // +1 or -1 if recent flips lean one way, 0 if there are none or they cancel out
+    public int getDirection() {
+        long now = SystemClock.uptimeMillis();
+        int sum = 0;
+        for (int i = 0; i < count; i++) {
+            if (now - times[i] <= WINDOW) {
+                sum += directions[i];
+            }
+        }
+        return Integer.signum(sum);
+    }
+
+    // work out how many pages to render in the flip direction (ahead) and against it (behind)
+    // base: the window when idle, pressure: fraction of normal memory we may use (see MemoryBudget),
+    // capacity: how many pages of the current size fit in the page cache
+    public void updateWindow(int base, float pressure, int capacity) {
+        int wanted = base + (int) Math.ceil(getRate() * LOOKAHEAD);
+        ahead = Math.min(MAX_AHEAD, Math.max(1, Math.round(wanted * pressure)));
+        // when flipping in one direction, keep just one page on the other side
+        behind = getDirection() == 0 ? ahead : Math.min(1, base);
+        // leave room in the cache for the current page, ahead first
+        int room = Math.max(0, capacity - 1);
+        ahead = Math.min(ahead, room);
+        behind = Math.min(behind, room - ahead);
+    }
+
+    public int getAhead() {
+        return ahead;
+    }
+
+    public int getBehind() {
+        return behind;
+    }
+
+    @Override
+    public String stats() {
+        return "rate=" + getRate() + "/s direction=" + getDirection() + " ahead=" + ahead + " behind=" + behind;
+    }
+}
@@ -1,46 +1,102 @@
 package ca.uwaterloo.cs349.pdfreader;
 
 import android.content.Context;
+import android.content.DialogInterface;
+import android.content.Intent;
 import android.content.pm.ActivityInfo;
 import android.content.res.Configuration;
 import android.graphics.Bitmap;
 import android.graphics.Color;
 import android.graphics.pdf.PdfRenderer;
+import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
-import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.MotionEvent;
 import android.view.View;
 import android.widget.*;
 import androidx.annotation.RequiresApi;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.HashSet;
 
 // PDF sample code from
 // https://medium.com/@chahat.jain0/rendering-a-pdf-document-in-android-activity-fragment-using-pdfrenderer-442462cb8f9a
 // Issues about cache etc. are not obvious from documentation, so read this carefully before making changes
 // to the PDF display code.
 
-public class MainActivity extends AppCompatActivity {
+public class MainActivity extends AppCompatActivity implements PageRenderer.Callback, ContinuousPageAdapter.PageSource,
+        PageGeometry.Listener {
 
     final String LOGNAME = "pdf_viewer";
     final String FILENAME = "shannon1948.pdf";
     final int FILERESID = R.raw.shannon1948;
+    // documents handed over as a stream that cannot seek are copied here first
+    final String STREAM_COPY = "opened.pdf";
+    final String PDF_TYPE = "application/pdf";
+    static final int OPEN_REQUEST = 1;
+
+    // how many pages on either side of the current one to render ahead of time
+    static final int DEFAULT_PREFETCH_DEPTH = 1;
+    // the quick first pass of a page is rendered at 1/PREVIEW_DIVISOR of the full width
+    static final int PREVIEW_DIVISOR = 4;
 
     // manage the pages of the PDF, see below
-    PdfRenderer pdfRenderer;
-    private ParcelFileDescriptor parcelFileDescriptor;
-    private PdfRenderer.Page currentPage;
+    // all PdfRenderer work happens on the PageRenderer threads of this pool
+    RendererPool pageRenderer;
+    // background work finishing after this must not open anything
+    private boolean destroyed = false;
+    // render latencies and cache stats, dumped to a file by long pressing the file name
+    Metrics metrics = new Metrics();
+    // when the document being opened was asked for, 0 once its first page is on screen
+    private long openedAt = 0;
+    TextView filenameView;
+    private int currentIndex;
+    private PageCache.Key displayedKey;
+    private Bitmap displayedBitmap;
+
+    // rendered pages we have already seen, see PageCache
+    PageCache pageCache;
+    // recycled page bitmaps, shared by the cache and the render thread
+    BitmapPool bitmapPool;
+    // tiles of the current page when zoomed in
+    TileManager tileManager;
+    // small renders of every page, for the page grid
+    ThumbnailCache thumbnailCache;
+    // trims all of the above when the system is short on memory
+    MemoryBudget memoryBudget;
+    private PageGridAdapter pageGridAdapter;
+    // renders queued on the renderers that have not come back yet
+    private final HashSet<PageCache.Key> pendingRenders = new HashSet<>();
+    // pages either side to prefetch when not flipping, widened by flipTracker when flipping fast
+    int prefetchDepth = DEFAULT_PREFETCH_DEPTH;
+    private final FlipTracker flipTracker = new FlipTracker();
+    // size of every page, once measured in the background; null until then
+    PageGeometry pageGeometry;
+    // how big to render pages for the current view size
+    RenderSizePolicy renderSizePolicy;
+    // how rendered pages are stored in the cache, see chooseQuality
+    private RenderQuality renderQuality = RenderQuality.ARGB_8888;
 
     // custom ImageView class that captures strokes and draws them over the image
     PDFimage pageImage;
     TextView pageNumberView;
 
+    // continuous scroll mode: a recycling list of pages instead of pageImage
+    boolean scrollMode = false;
+    RecyclerView pageList;
+    LinearLayoutManager pageListLayout;
+    ContinuousPageAdapter continuousAdapter;
+    private int firstVisible = -1;
+    private int lastVisible = -1;
+
     @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -48,8 +104,14 @@ public class MainActivity extends AppCompatActivity {
         setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_PORTRAIT);
         setContentView(R.layout.activity_main);
 
-        TextView filenameView = findViewById(R.id.filename);
-        filenameView.setText(FILENAME);
+        filenameView = findViewById(R.id.filename);
+        filenameView.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                dumpMetrics();
+                return true;
+            }
+        });
 
         LinearLayout layout = findViewById(R.id.pdfLayout);
         pageImage = new PDFimage(this);
@@ -58,10 +120,70 @@ public class MainActivity extends AppCompatActivity {
         pageImage.setMinimumWidth(1000);
         pageImage.setMinimumHeight(2000);
 
+        // re-render only when the view width moves to another size bucket
+        renderSizePolicy = new RenderSizePolicy(getResources().getDisplayMetrics());
+        pageImage.addOnLayoutChangeListener(new View.OnLayoutChangeListener() {
+            @Override
+            public void onLayoutChange(View v, int left, int top, int right, int bottom,
+                                       int oldLeft, int oldTop, int oldRight, int oldBottom) {
+                // a hidden view has no width, keep the last one
+                if (right - left > 0 && renderSizePolicy.setViewWidth(right - left) && pageRenderer != null) {
+                    Log.d(LOGNAME, "render width now " + renderSizePolicy.targetWidth());
+                    chooseQuality();
+                    showPage(currentIndex);
+                }
+            }
+        });
+
+        pageListLayout = new LinearLayoutManager(this);
+        pageList = new RecyclerView(this);
+        pageList.setLayoutManager(pageListLayout);
+        pageList.setVisibility(View.GONE);
+        layout.addView(pageList, layout.indexOfChild(pageImage) + 1,
+                new LinearLayout.LayoutParams(LinearLayout.LayoutParams.MATCH_PARENT, 0, 1f));
+        pageList.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                onVisiblePagesChanged();
+            }
+        });
+
+        Button openButton = findViewById(R.id.open);
+        openButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+                intent.addCategory(Intent.CATEGORY_OPENABLE);
+                intent.setType(PDF_TYPE);
+                startActivityForResult(intent, OPEN_REQUEST);
+                Log.d("BUTTONS", "clicked open");
+            }
+        });
+
+        final ToggleButton scrollButton = findViewById(R.id.scroll);
+        scrollButton.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(CompoundButton button, boolean isChecked) {
+                if (pageRenderer != null) {
+                    setScrollMode(isChecked);
+                }
+                Log.d("BUTTONS", "clicked scroll: " + isChecked);
+            }
+        });
+
         pageNumberView = new TextView(this);
         layout.addView(pageNumberView);
         pageNumberView.setTextSize(24);
         pageNumberView.setPadding(1400, 0, 0, 0);
+        // tap the page number to jump to any page from a grid of thumbnails
+        pageNumberView.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                if (pageRenderer != null) {
+                    showPageGrid();
+                }
+            }
+        });
 
 
         final ImageButton undoButton = findViewById(R.id.undo);
@@ -74,9 +196,12 @@ public class MainActivity extends AppCompatActivity {
                         if (pageModified > -1) {
                             undoButton.setBackgroundResource(R.drawable.undo_clicked);
                             v.performClick();
-                            if (pageModified != currentPage.getIndex()) {
+                            if (pageModified != currentIndex) {
                                 showPage(pageModified);
                             }
+                            if (continuousAdapter != null) {
+                                continuousAdapter.invalidatePage(pageModified);
+                            }
                         }
                         Log.d("BUTTONS", "clicked undo: " + pageModified);
                         break;
@@ -98,9 +223,12 @@ public class MainActivity extends AppCompatActivity {
                         if (pageModified > -1) {
                             redoButton.setBackgroundResource(R.drawable.redo_clicked);
                             v.performClick();
-                            if (pageModified != currentPage.getIndex()) {
+                            if (pageModified != currentIndex) {
                                 showPage(pageModified);
                             }
+                            if (continuousAdapter != null) {
+                                continuousAdapter.invalidatePage(pageModified);
+                            }
                         }
                         Log.d("BUTTONS", "clicked redo: " + pageModified);
                         break;
@@ -118,10 +246,11 @@ public class MainActivity extends AppCompatActivity {
             public boolean onTouch(View v, MotionEvent event) {
                 switch(event.getAction()) {
                     case MotionEvent.ACTION_DOWN:
-                        if (currentPage.getIndex() > 0) {
+                        if (currentIndex > 0) {
                             previousButton.setBackgroundResource(R.drawable.left_clicked);
                             v.performClick();
-                            showPage(currentPage.getIndex()-1);
+                            flipTracker.onFlip(-1);
+                            showPage(currentIndex-1);
                         }
                         Log.d("BUTTONS", "clicked prev: ");
                         break;
@@ -139,10 +268,11 @@ public class MainActivity extends AppCompatActivity {
             public boolean onTouch(View v, MotionEvent event) {
                 switch(event.getAction()) {
                     case MotionEvent.ACTION_DOWN:
-                        if (currentPage.getIndex() < pdfRenderer.getPageCount() - 1) {
+                        if (pageRenderer != null && currentIndex < pageRenderer.getPageCount() - 1) {
                             nextButton.setBackgroundResource(R.drawable.right_clicked);
                             v.performClick();
-                            showPage(currentPage.getIndex()+1);
+                            flipTracker.onFlip(1);
+                            showPage(currentIndex+1);
                         }
                         Log.d("BUTTONS", "clicked next: ");
                         break;
@@ -162,7 +292,7 @@ public class MainActivity extends AppCompatActivity {
                     case MotionEvent.ACTION_DOWN:
                         penButton.setBackgroundResource(R.drawable.pen_clicked);
                         v.performClick();
-                        pageImage.setTool(PDFimage.Tool.PEN);
+                        setTool(Tool.PEN);
                         Log.d("BUTTONS", "clicked pen: ");
                         break;
                     case MotionEvent.ACTION_UP:
@@ -181,7 +311,7 @@ public class MainActivity extends AppCompatActivity {
                     case MotionEvent.ACTION_DOWN:
                         markerButton.setBackgroundResource(R.drawable.marker_clicked);
                         v.performClick();
-                        pageImage.setTool(PDFimage.Tool.MARKER);
+                        setTool(Tool.MARKER);
                         Log.d("BUTTONS", "clicked marker: ");
                         break;
                     case MotionEvent.ACTION_UP:
@@ -200,7 +330,7 @@ public class MainActivity extends AppCompatActivity {
                     case MotionEvent.ACTION_DOWN:
                         eraserButton.setBackgroundResource(R.drawable.eraser_clicked);
                         v.performClick();
-                        pageImage.setTool(PDFimage.Tool.ERASER);
+                        setTool(Tool.ERASER);
                         Log.d("BUTTONS", "clicked eraser: ");
                         break;
                     case MotionEvent.ACTION_UP:
@@ -211,20 +341,164 @@ public class MainActivity extends AppCompatActivity {
             }
         });
 
-        // open page 0 of the PDF
+        // whole strokes, or only the parts of them the eraser passes over
+        final ToggleButton eraseModeButton = findViewById(R.id.erase_mode);
+        eraseModeButton.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(CompoundButton button, boolean isChecked) {
+                pageImage.setPartialErase(isChecked);
+                if (continuousAdapter != null) {
+                    continuousAdapter.setPartialErase(isChecked);
+                }
+                Log.d("BUTTONS", "clicked erase mode: " + isChecked);
+            }
+        });
+
+        int cacheBudget = PageCache.defaultBudget(this);
+        bitmapPool = new BitmapPool(cacheBudget / 2);
+        pageCache = new PageCache(cacheBudget, bitmapPool);
+        tileManager = new TileManager(cacheBudget / 2, bitmapPool);
+        pageImage.setTileManager(tileManager);
+        thumbnailCache = new ThumbnailCache(cacheBudget / 8, getResources().getDisplayMetrics().density);
+
+        memoryBudget = new MemoryBudget();
+        memoryBudget.register("pages", pageCache);
+        memoryBudget.register("pool", bitmapPool);
+        memoryBudget.register("tiles", tileManager);
+        memoryBudget.register("thumbnails", thumbnailCache);
+        getApplicationContext().registerComponentCallbacks(memoryBudget);
+
+        metrics.register("pages", pageCache);
+        metrics.register("tiles", tileManager);
+        metrics.register("pool", bitmapPool);
+        metrics.register("bitmap bytes", memoryBudget);
+        metrics.register("prefetch window", flipTracker);
+        metrics.register("renderers", new Metrics.Source() {
+            @Override
+            public String stats() {
+                return pageRenderer != null ? pageRenderer.stats() : "closed";
+            }
+        });
+
+        // open page 0 of the PDF we were asked to view, or of the bundled one
         // it will be displayed as an image in the pageImage (above)
+        Uri uri = Intent.ACTION_VIEW.equals(getIntent().getAction()) ? getIntent().getData() : null;
+        if (uri != null) {
+            openDocument(uri);
+        } else {
+            openBundledDocument();
+        }
+    }
+
+    // open the PDF shipped with the app, once it is extracted into the cache directory
+    // pdfRenderer cannot handle the resource directly, so it is copied out on the first launch
+    // and checked on later ones, both in the background
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    private void openBundledDocument() {
+        openedAt = SystemClock.uptimeMillis();
+        DocumentStager.stageInBackground(new DocumentStager.Source() {
+            @Override
+            public InputStream open() {
+                return getResources().openRawResource(FILERESID);
+            }
+        }, new File(getCacheDir(), FILENAME), FILENAME, rendererOpener(), new Document.Listener<RendererPool>() {
+            @Override
+            public void onDocumentOpened(RendererPool renderer) {
+                if (renderer == null) {
+                    Log.d(LOGNAME, "Error opening PDF");
+                    return;
+                }
+                swapDocument(renderer);
+            }
+        });
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (requestCode == OPEN_REQUEST && resultCode == RESULT_OK && data != null && data.getData() != null) {
+            openDocument(data.getData());
+        }
+    }
+
+    // replace whatever is open with the document at uri, once it is ready
+    // if it cannot be opened, the open document stays; with none open, the bundled one opens
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    private void openDocument(final Uri uri) {
+        // staging and preparing the document count towards the time to its first page
+        openedAt = SystemClock.uptimeMillis();
+        // PdfRenderer has to seek, so a pipe is streamed into a file once
+        Document.prepare(getContentResolver(), uri, new File(getCacheDir(), STREAM_COPY), rendererOpener(),
+                new Document.Listener<RendererPool>() {
+                    @Override
+                    public void onDocumentOpened(RendererPool renderer) {
+                        if (renderer != null) {
+                            swapDocument(renderer);
+                            return;
+                        }
+                        if (destroyed) {
+                            return;
+                        }
+                        Log.d(LOGNAME, "Unable to open " + uri);
+                        Toast.makeText(MainActivity.this, "Unable to open " + uri, Toast.LENGTH_SHORT).show();
+                        // nothing new is going to reach the screen
+                        openedAt = 0;
+                        if (pageRenderer == null) {
+                            openBundledDocument();
+                        }
+                    }
+                });
+    }
+
+    // opens the renderers on a document, on the thread that prepared it
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    private Document.Opener<RendererPool> rendererOpener() {
+        final Context context = getApplicationContext();
+        return new Document.Opener<RendererPool>() {
+            @Override
+            public RendererPool open(Document document) throws IOException {
+                return newRenderer(context, document);
+            }
+        };
+    }
+
+    // show the document renderer is open on instead of whatever is open
+    // the new renderers are open before anything of the old document is let go
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    private void swapDocument(RendererPool renderer) {
+        if (destroyed) {
+            // opened after we were gone, nobody else will close it
+            renderer.close();
+            return;
+        }
+        if (scrollMode) {
+            ((ToggleButton) findViewById(R.id.scroll)).setChecked(false);
+        }
+        // nothing cached or drawn belongs to the new document
+        if (displayedBitmap != null) {
+            pageCache.unpin(displayedBitmap);
+        }
+        displayedBitmap = null;
+        displayedKey = null;
+        pageImage.setImage(null);
+        pageCache.evictAll();
+        pageImage.clearAnnotations();
         try {
-            openRenderer(this);
-            showPage(0);
-        } catch (IOException exception) {
-            Log.d(LOGNAME, "Error opening PDF");
+            closeRenderer();
+        } catch (IOException ex) {
+            Log.d(LOGNAME, "Unable to close PDF renderer");
         }
+        openRenderer(this, renderer);
+        showPage(0);
     }
 
     @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        destroyed = true;
+        getApplicationContext().unregisterComponentCallbacks(memoryBudget);
         try {
             closeRenderer();
         } catch (IOException ex) {
@@ -232,65 +506,354 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    // capture PDF data
+    // several renderers on the document, see RendererPool for what they overlap
+    // runs on a background thread, see rendererOpener
     @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
-    private void openRenderer(Context context) throws IOException {
-        // In this sample, we read a PDF from the assets directory.
-        File file = new File(context.getCacheDir(), FILENAME);
-        if (!file.exists()) {
-            // pdfRenderer cannot handle the resource directly,
-            // so extract it into the local cache directory.
-            InputStream asset = this.getResources().openRawResource(FILERESID);
-            FileOutputStream output = new FileOutputStream(file);
-            final byte[] buffer = new byte[1024];
-            int size;
-            while ((size = asset.read(buffer)) != -1) {
-                output.write(buffer, 0, size);
-            }
-            asset.close();
-            output.close();
-        }
-        parcelFileDescriptor = ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+    private RendererPool newRenderer(Context context, Document document) throws IOException {
+        return new RendererPool(document, RendererPool.defaultCount(context), bitmapPool,
+                new DiskPageCache(context.getCacheDir(), document, DiskPageCache.DEFAULT_MAX_BYTES,
+                        DiskPageCache.DEFAULT_FORMAT, bitmapPool, metrics), metrics, this);
+    }
+
+    // start rendering, on renderers opened by newRenderer
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    private void openRenderer(Context context, RendererPool renderer) {
+        pageRenderer = renderer;
+        Document document = renderer.getDocument();
+        filenameView.setText(document.getName());
+        currentIndex = 0;
+        Log.d(LOGNAME, "renderers: " + pageRenderer.size());
+        tileManager.setRenderer(pageRenderer);
+        thumbnailCache.setRenderer(pageRenderer);
+        // page sizes for layout, without opening pages on the renderers
+        pageGeometry = null;
+        chooseQuality();
+        PageGeometry.load(document, PageGeometry.indexFor(document, context.getCacheDir()), this);
+    }
 
-        // capture PDF data
-        // all this just to get a handle to the actual PDF representation
-        if (parcelFileDescriptor != null) {
-            pdfRenderer = new PdfRenderer(parcelFileDescriptor);
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    @Override
+    public void onGeometryLoaded(PageGeometry geometry) {
+        if (pageRenderer == null || geometry == null || geometry.getPageCount() != pageRenderer.getPageCount()) {
+            return;
+        }
+        pageGeometry = geometry;
+        if (continuousAdapter != null) {
+            continuousAdapter.setGeometry(geometry);
         }
+        chooseQuality();
+    }
+
+    // store renders at the best quality that keeps enough pages of this document in the cache
+    // until its page sizes are known, pages are taken to be US letter
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    private void chooseQuality() {
+        int width = renderSizePolicy.targetWidth();
+        renderQuality = RenderQuality.choose(pageCache.maxSize(), width, Math.round(width * pageAspect()));
+        pageRenderer.setQuality(renderQuality);
+        Log.d(LOGNAME, "render quality " + renderQuality);
+    }
+
+    // height over width of a typical page of the document, US letter until it is measured
+    private float pageAspect() {
+        return pageGeometry != null ? pageGeometry.getMeanAspect() : RenderSizePolicy.DEFAULT_PAGE_ASPECT;
     }
 
     // do this before you quit!
     @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
     private void closeRenderer() throws IOException {
-        if (null != currentPage) {
-            currentPage.close();
+        pendingRenders.clear();
+        tileManager.setRenderer(null);
+        thumbnailCache.setRenderer(null);
+        if (pageRenderer != null) {
+            pageRenderer.close();
         }
-        pdfRenderer.close();
-        parcelFileDescriptor.close();
+        tileManager.clear();
+        thumbnailCache.clear();
+        bitmapPool.clear();
     }
 
     @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
     private void showPage(int index) {
-        int totalPage = pdfRenderer.getPageCount();
+        // nothing to show while the document is still being prepared
+        if (pageRenderer == null) {
+            return;
+        }
+        int totalPage = pageRenderer.getPageCount();
         if (totalPage <= index) {
             return;
         }
-        // Close the current page before opening another one.
-        if (null != currentPage) {
-            currentPage.close();
+        if (scrollMode) {
+            pageListLayout.scrollToPositionWithOffset(index, 0);
+            return;
+        }
+        currentIndex = index;
+        // annotations follow the page right away, not when its render arrives
+        pageImage.setCurrentIndex(index);
+        // anything still queued for the previous page is superseded
+        pageRenderer.newGeneration();
+        pendingRenders.clear();
+        tileManager.clearPending();
+        thumbnailCache.clearPending();
+        PageCache.Key key = keyFor(index);
+        Bitmap bitmap = pageCache.get(key);
+        Log.d(LOGNAME, "page cache: " + pageCache.stats());
+        Log.d(LOGNAME, "bitmap pool: " + bitmapPool.stats());
+        Log.d(LOGNAME, "memory: " + memoryBudget.stats());
+        Log.d(LOGNAME, "render queue: " + pageRenderer.stats());
+        if (bitmap != null) {
+            displayPage(key, bitmap);
+        } else {
+            // progressive: show a cheap low resolution pass first, then swap in the sharp one
+            // both are visible work, served in order, so queue the preview first
+            // the sharp pass is dropped if the user flips away before it starts
+            PageCache.Key previewKey = previewKeyFor(index);
+            Bitmap preview = pageCache.get(previewKey);
+            if (preview != null) {
+                displayPage(previewKey, preview);
+            } else {
+                requestRender(previewKey, true);
+            }
+            requestRender(key, true);
+        }
+        prefetchAround(index);
+    }
+
+    private PageCache.Key keyFor(int index) {
+        return new PageCache.Key(index, renderSizePolicy.targetWidth(), PdfRenderer.Page.RENDER_MODE_FOR_DISPLAY);
+    }
+
+    private PageCache.Key previewKeyFor(int index) {
+        return new PageCache.Key(index, renderSizePolicy.targetWidth() / PREVIEW_DIVISOR, PdfRenderer.Page.RENDER_MODE_FOR_DISPLAY);
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    private void requestRender(PageCache.Key key, boolean urgent) {
+        if (pendingRenders.add(key)) {
+            pageRenderer.render(key, urgent);
+        }
+    }
+
+    // speculatively render the neighbours of the current page so next/previous find a
+    // bitmap ready in the cache, further ahead the faster the user is flipping
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    private void prefetchAround(int index) {
+        int totalPage = pageRenderer.getPageCount();
+        // sharp renders at the current quality are what prefetching fills the cache with
+        int width = keyFor(index).width;
+        long pageBytes = renderQuality.bytesPerPage(width, Math.round(width * pageAspect()));
+        int capacity = (int) (pageCache.maxSize() / Math.max(1, pageBytes));
+        flipTracker.updateWindow(prefetchDepth, memoryBudget.getPressureFraction(), capacity);
+        Log.d(LOGNAME, "prefetch window: " + flipTracker.stats());
+        int forward = flipTracker.getDirection() < 0 ? -1 : 1;
+        int ahead = flipTracker.getAhead();
+        int behind = flipTracker.getBehind();
+        // nearest first, the render queue is worked in order
+        for (int distance = 1; distance <= Math.max(ahead, behind); distance++) {
+            if (distance <= ahead) {
+                prefetch(index + forward * distance, totalPage);
+            }
+            if (distance <= behind) {
+                prefetch(index - forward * distance, totalPage);
+            }
+        }
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    private void prefetch(int index, int totalPage) {
+        if (index < 0 || index >= totalPage) {
+            return;
+        }
+        PageCache.Key key = keyFor(index);
+        if (!pageCache.contains(key)) {
+            requestRender(key, false);
+        }
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    @Override
+    public void onPageRendered(PageCache.Key key, Bitmap bitmap) {
+        pendingRenders.remove(key);
+        pageCache.put(key, bitmap);
+        if (continuousAdapter != null) {
+            continuousAdapter.onPageRendered(key.index);
+            return;
+        }
+        if (key.index != currentIndex) {
+            return;
+        }
+        // never replace the sharp render with a late preview
+        boolean isPreview = key.width < renderSizePolicy.targetWidth();
+        if (!isPreview || displayedKey == null || displayedKey.index != key.index) {
+            displayPage(key, bitmap);
+        }
+    }
+
+    @Override
+    public void onTileRendered(TileManager.Key key, Bitmap tile) {
+        tileManager.onTileRendered(key, tile);
+        if (key.index == currentIndex) {
+            pageImage.invalidate();
+        }
+    }
+
+    @Override
+    public void onThumbnailRendered(PageCache.Key key, Bitmap thumbnail) {
+        thumbnailCache.onThumbnailRendered(key.index, thumbnail);
+        if (pageGridAdapter != null) {
+            pageGridAdapter.notifyDataSetChanged();
+        }
+    }
+
+    // grid of every page; picking one jumps straight to it
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    private void showPageGrid() {
+        GridView grid = new GridView(this);
+        grid.setNumColumns(GridView.AUTO_FIT);
+        grid.setColumnWidth(thumbnailCache.getWidth());
+        grid.setStretchMode(GridView.STRETCH_COLUMN_WIDTH);
+        pageGridAdapter = new PageGridAdapter(this, thumbnailCache, pageRenderer.getPageCount());
+        grid.setAdapter(pageGridAdapter);
+        grid.setSelection(currentIndex);
+
+        final AlertDialog dialog = new AlertDialog.Builder(this)
+                .setView(grid)
+                .setOnDismissListener(new DialogInterface.OnDismissListener() {
+                    @Override
+                    public void onDismiss(DialogInterface d) {
+                        pageGridAdapter = null;
+                    }
+                })
+                .show();
+        grid.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+            @Override
+            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+                dialog.dismiss();
+                showPage(position);
+            }
+        });
+    }
+
+    // write the metrics where `adb pull` can reach them, for comparing runs offline
+    private void dumpMetrics() {
+        Log.d(LOGNAME, "metrics:\n" + metrics.snapshot());
+        File directory = getExternalFilesDir(null);
+        if (directory == null) {
+            directory = getCacheDir();
+        }
+        try {
+            File file = metrics.dump(new File(directory, "metrics"));
+            Toast.makeText(this, "Metrics written to " + file, Toast.LENGTH_SHORT).show();
+        } catch (IOException ex) {
+            Log.d(LOGNAME, "Unable to write metrics");
+        }
+    }
+
+    private void setTool(Tool tool) {
+        pageImage.setTool(tool);
+        if (continuousAdapter != null) {
+            continuousAdapter.setTool(tool);
+        }
+    }
+
+    // switch between one page at a time and continuous vertical scrolling
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    private void setScrollMode(boolean on) {
+        if (on == scrollMode) {
+            return;
+        }
+        scrollMode = on;
+        if (on) {
+            // the single page view lets go of its bitmap while hidden
+            if (displayedBitmap != null) {
+                pageCache.unpin(displayedBitmap);
+            }
+            displayedBitmap = null;
+            displayedKey = null;
+            pageImage.setImage(null);
+            pageImage.setVisibility(View.GONE);
+
+            continuousAdapter = new ContinuousPageAdapter(this, pageImage, this, pageRenderer.getPageCount());
+            if (pageGeometry != null) {
+                continuousAdapter.setGeometry(pageGeometry);
+            }
+            pageList.setAdapter(continuousAdapter);
+            pageList.setVisibility(View.VISIBLE);
+            firstVisible = -1;
+            lastVisible = -1;
+            pageListLayout.scrollToPositionWithOffset(currentIndex, 0);
+        } else {
+            continuousAdapter.releaseAll();
+            continuousAdapter = null;
+            pageList.setAdapter(null);
+            pageList.setVisibility(View.GONE);
+            pageImage.setVisibility(View.VISIBLE);
+            showPage(currentIndex);
+        }
+    }
+
+    // scroll mode: the visible pages changed, render them and a window around them
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    private void onVisiblePagesChanged() {
+        int first = pageListLayout.findFirstVisibleItemPosition();
+        int last = pageListLayout.findLastVisibleItemPosition();
+        if (first < 0 || (first == firstVisible && last == lastVisible)) {
+            return;
+        }
+        firstVisible = first;
+        lastVisible = last;
+        currentIndex = first;
+        int totalPage = pageRenderer.getPageCount();
+        pageNumberView.setText("Page " + (first + 1) + "/" + totalPage);
+
+        // renders queued for pages that scrolled out of the window are superseded
+        pageRenderer.newGeneration();
+        pendingRenders.clear();
+        tileManager.clearPending();
+        thumbnailCache.clearPending();
+        for (int i = Math.max(0, first - prefetchDepth); i <= Math.min(totalPage - 1, last + prefetchDepth); i++) {
+            PageCache.Key key = keyFor(i);
+            if (!pageCache.contains(key)) {
+                requestRender(key, i >= first && i <= last);
+            }
         }
-        // Use `openPage` to open a specific page in PDF.
-        currentPage = pdfRenderer.openPage(index);
-        // Important: the destination bitmap must be ARGB (not RGB).
-        Bitmap bitmap = Bitmap.createBitmap(currentPage.getWidth(), currentPage.getHeight(), Bitmap.Config.ARGB_8888);
+    }
 
-        // Here, we render the page onto the Bitmap.
-        // To render a portion of the page, use the second and third parameter. Pass nulls to get the default result.
-        // Pass either RENDER_MODE_FOR_DISPLAY or RENDER_MODE_FOR_PRINT for the last parameter.
-        currentPage.render(bitmap, null, null, PdfRenderer.Page.RENDER_MODE_FOR_DISPLAY);
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    @Override
+    public Bitmap acquirePage(int index) {
+        PageCache.Key key = keyFor(index);
+        Bitmap bitmap = pageCache.get(key);
+        if (bitmap != null) {
+            pageCache.pin(bitmap);
+        } else {
+            requestRender(key, true);
+        }
+        return bitmap;
+    }
 
-        // Display the page
+    @Override
+    public void releasePage(Bitmap bitmap) {
+        pageCache.unpin(bitmap);
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    private void displayPage(PageCache.Key key, Bitmap bitmap) {
+        int index = key.index;
+        displayedKey = key;
+        // pin before unpinning, the new bitmap may be the old one
+        pageCache.pin(bitmap);
+        if (displayedBitmap != null) {
+            pageCache.unpin(displayedBitmap);
+        }
+        displayedBitmap = bitmap;
         pageImage.setImage(bitmap);
+        if (openedAt != 0) {
+            metrics.histogram(Metrics.OPEN_TO_FIRST_PIXEL).record(SystemClock.uptimeMillis() - openedAt);
+            openedAt = 0;
+        }
         pageImage.setCurrentIndex(index);
-        pageNumberView.setText("Page " + (index + 1) + "/" + totalPage);
+        pageNumberView.setText("Page " + (index + 1) + "/" + pageRenderer.getPageCount());
     }
 }
@@ -0,0 +1,116 @@
+package ca.uwaterloo.cs349.pdfreader;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+
+// Central place that knows about every bitmap cache in the app.
+// When the system reports memory pressure, each registered cache is trimmed to a
+// fraction of what it may normally hold, scaled by how severe the trim level is.
+// Bitmaps on screen are pinned by their caches and survive any trim.
+public class MemoryBudget implements ComponentCallbacks2, Metrics.Source {
+
+    final String LOGNAME = "memory_budget";
+
+    // how long a trim while running keeps readahead scaled down
+    static final long PRESSURE_WINDOW = 30000; // ms
+
+    // something that holds bitmaps it could let go of
+    public interface Trimmable {
+        // bytes currently held
+        int getRetainedBytes();
+
+        // drop down to this fraction of the normal budget, 0 releases everything
+        void trim(float fraction);
+    }
+
+    private final ArrayList<String> names = new ArrayList<>();
+    private final ArrayList<Trimmable> trimmables = new ArrayList<>();
+    private int lastTrimLevel = 0;
+    private long lastTrimTime = 0;
+
+    public void register(String name, Trimmable trimmable) {
+        names.add(name);
+        trimmables.add(trimmable);
+    }
+
+    // how much of its budget a cache may keep at each trim level
+    static float fractionFor(int level) {
+        if (level >= TRIM_MEMORY_COMPLETE) {
+            return 0f;
+        } else if (level >= TRIM_MEMORY_MODERATE) {
+            return 0.25f;
+        } else if (level >= TRIM_MEMORY_BACKGROUND) {
+            return 0.5f;
+        } else if (level >= TRIM_MEMORY_UI_HIDDEN) {
+            return 0.75f;
+        } else if (level >= TRIM_MEMORY_RUNNING_CRITICAL) {
+            return 0.25f;
+        } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            return 0.5f;
+        } else if (level >= TRIM_MEMORY_RUNNING_MODERATE) {
+            return 0.75f;
+        }
+        return 1f;
+    }
+
+    public void trim(float fraction) {
+        int before = getUsedBytes();
+        for (Trimmable trimmable : trimmables) {
+            trimmable.trim(fraction);
+        }
+        Log.d(LOGNAME, "trimmed to " + fraction + ": " + before + " -> " + getUsedBytes() + " bytes");
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        lastTrimLevel = level;
+        lastTrimTime = SystemClock.uptimeMillis();
+        trim(fractionFor(level));
+    }
+
+    @Override
+    public void onLowMemory() {
+        trim(0f);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    // last level the system reported, 0 if there has been no pressure
+    public int getLastTrimLevel() {
+        return lastTrimLevel;
+    }
+
+    // fraction of normal readahead to do right now: scaled down for a while after the system
+    // asked us to trim while running, full once that has passed or if we were only hidden
+    public float getPressureFraction() {
+        if (lastTrimLevel == 0 || lastTrimLevel >= TRIM_MEMORY_UI_HIDDEN
+                || SystemClock.uptimeMillis() - lastTrimTime > PRESSURE_WINDOW) {
+            return 1f;
+        }
+        return fractionFor(lastTrimLevel);
+    }
+
+    // total bytes held by everything registered
+    public int getUsedBytes() {
+        int total = 0;
+        for (Trimmable trimmable : trimmables) {
+            total += trimmable.getRetainedBytes();
+        }
+        return total;
+    }
+
+    @Override
+    public String stats() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < trimmables.size(); i++) {
+            builder.append(names.get(i)).append('=').append(trimmables.get(i).getRetainedBytes()).append(' ');
+        }
+        return builder.append("total=").append(getUsedBytes()).toString();
+    }
+}
@@ -0,0 +1,145 @@
+package ca.uwaterloo.cs349.pdfreader;
+
+import android.os.Build;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Numbers on how rendering and caching behave, for comparing builds offline.
+// Stages are timed into latency histograms and marked as android.os.Trace sections, so
+// they also show up in systrace/Perfetto. Caches report their own stats as Sources.
+// snapshot() collects everything as text, dump() writes it to a file.
+// Thread safe: stages are timed on the render and disk threads.
+public class Metrics {
+
+    final String LOGNAME = "metrics";
+
+    // histogram names
+    static final String PAGE_RENDER = "page_render";
+    static final String TILE_RENDER = "tile_render";
+    static final String THUMBNAIL_RENDER = "thumbnail_render";
+    // how long a renderer waited for another one to finish with a shared document
+    static final String PDF_LOCK_WAIT = "pdf_lock_wait";
+    static final String DISK_READ = "disk_read";
+    static final String DISK_WRITE = "disk_write";
+    static final String OPEN_TO_FIRST_PIXEL = "open_to_first_pixel";
+
+    // something that reports its own numbers, like a cache
+    public interface Source {
+        String stats();
+    }
+
+    // latencies in power of two millisecond buckets: <1, <2, <4 ... <2048, and the rest
+    public static class Histogram {
+        static final int BUCKETS = 13;
+
+        private final long[] counts = new long[BUCKETS];
+        private long count = 0;
+        private long total = 0;
+        private long max = 0;
+
+        public synchronized void record(long millis) {
+            int bucket = 0;
+            while (bucket < BUCKETS - 1 && millis >= (1L << bucket)) {
+                bucket++;
+            }
+            counts[bucket]++;
+            count++;
+            total += millis;
+            max = Math.max(max, millis);
+        }
+
+        // upper bound of the bucket holding the given fraction of samples, e.g. 0.5 for the median
+        public synchronized long percentile(float fraction) {
+            long target = (long) Math.ceil(count * fraction);
+            long seen = 0;
+            for (int bucket = 0; bucket < BUCKETS - 1; bucket++) {
+                seen += counts[bucket];
+                if (seen >= target) {
+                    return 1L << bucket;
+                }
+            }
+            return max;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "count=" + count + " avg=" + (count > 0 ? total / count : 0) + "ms p50<" + percentile(0.5f)
+                    + "ms p90<" + percentile(0.9f) + "ms p99<" + percentile(0.99f) + "ms max=" + max + "ms";
+        }
+    }
+
+    private final LinkedHashMap<String, Histogram> histograms = new LinkedHashMap<>();
+    private final ArrayList<String> sourceNames = new ArrayList<>();
+    private final ArrayList<Source> sources = new ArrayList<>();
+
+    public synchronized Histogram histogram(String name) {
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            histogram = new Histogram();
+            histograms.put(name, histogram);
+        }
+        return histogram;
+    }
+
+    public synchronized void register(String name, Source source) {
+        sourceNames.add(name);
+        sources.add(source);
+    }
+
+    // start timing a stage; pair with end() on the same thread
+    public long begin(String stage) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.beginSection(stage);
+        }
+        return SystemClock.uptimeMillis();
+    }
+
+    public void end(String stage, long start) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.endSection();
+        }
+        histogram(stage).record(SystemClock.uptimeMillis() - start);
+    }
+
+    // hits over lookups, as text
+    static String ratio(long hits, long misses) {
+        long lookups = hits + misses;
+        return lookups > 0 ? String.format("%.2f", hits / (float) lookups) : "-";
+    }
+
+    public synchronized String snapshot() {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            builder.append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+        }
+        for (int i = 0; i < sources.size(); i++) {
+            builder.append(sourceNames.get(i)).append(": ").append(sources.get(i).stats()).append('\n');
+        }
+        return builder.toString();
+    }
+
+    // write a snapshot into directory, named after the time it was taken
+    public File dump(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create " + directory);
+        }
+        File file = new File(directory, "metrics_" + System.currentTimeMillis() + ".txt");
+        Writer writer = new FileWriter(file);
+        try {
+            writer.write(snapshot());
+        } finally {
+            writer.close();
+        }
+        Log.d(LOGNAME, "wrote " + file);
+        return file;
+    }
+}
@@ -6,36 +6,81 @@ import android.graphics.*;
 import android.util.Log;
 import android.util.Pair;
 import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
 import android.widget.ImageView;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Stack;
+import java.util.WeakHashMap;
 
 @SuppressLint("AppCompatCustomView")
 public class PDFimage extends ImageView {
 
     final String LOGNAME = "pdf_image";
 
-    // drawing path
-    Path path = null;
-    HashMap<Integer, Pair<ArrayList<Path>, ArrayList<Path>>> pathMap = new HashMap<>(); // <index, <pen, marker>>
+    // stroke being drawn
+    Stroke stroke = null;
+    // eraser gesture in progress: where the eraser was at the last event, and what it took so far
+    // the whole gesture is undone in one step
+    static final int ERASER_RADIUS = 20; // view pixels
+    float eraseX, eraseY;
+    ArrayList<UndoablePath> erased = null;
+    float[] sweep = new float[16];
+    // cut strokes where the eraser passes and keep the rest, instead of taking whole strokes
+    boolean partialErase = false;
+    HashMap<Integer, Pair<ArrayList<Stroke>, ArrayList<Stroke>>> pathMap = new HashMap<>(); // <index, <pen, marker>>
     int currentIndex;
+    // Paths for drawing, built from a stroke's points the first time it is drawn
+    // strokes do not change once finished, so a built Path stays valid
+    WeakHashMap<Stroke, Path> drawPaths = new WeakHashMap<>();
+    // where the strokes of each page are, for the eraser; kept in step with pathMap
+    HashMap<Integer, StrokeIndex> indexMap = new HashMap<>();
+    // strokes are kept in page units: the page is PAGE_WIDTH units wide at whatever size it is
+    // shown, so strokes stay in place on the page across render sizes, zoom and view modes
+    static final float PAGE_WIDTH = 1000f;
+    Matrix pageMatrix = new Matrix(); // page units to unzoomed view pixels
+    Matrix inversePage = new Matrix();
+    Matrix touchMatrix = new Matrix(); // view pixels to page units
+    Paint strokePaint = new Paint();
 
     // image to display
-    enum Tool {PEN, MARKER, ERASER}
     Bitmap bitmap;
     Paint paint, pen, marker;
     Tool tool;
 
+    // zoom, applied on top of the ImageView's own fit-to-view matrix
+    // during a pinch only the matrix changes; tiles are re-rendered once the gesture settles
+    static final float MAX_ZOOM = 4f;
+    static final long SETTLE_DELAY = 150; // ms without zoom/pan changes before re-rendering
+    Matrix zoomMatrix = new Matrix();
+    Matrix inverseZoom = new Matrix();
+    float zoom = 1f;
+    float panX = 0, panY = 0;
+    float tileZoom = 1f; // zoom level tiles are rendered at
+    ScaleGestureDetector scaleDetector;
+    float lastFocusX, lastFocusY;
+    boolean panning = false;
+    Runnable settle = new Runnable() {
+        @Override
+        public void run() {
+            tileZoom = TileManager.zoomLevel(zoom);
+            invalidate();
+        }
+    };
+    TileManager tileManager;
+    Paint tilePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    RectF pageRect = new RectF();
+    RectF visibleRect = new RectF();
+
     // undo redo
     public static class UndoablePath {
-        Path path;
+        Stroke path;
         Tool original;
         Tool command;
 
-        public UndoablePath(Path path, Tool original, Tool command) {
+        public UndoablePath(Stroke path, Tool original, Tool command) {
             this.path = path;
             this.original = original;
             this.command = command;
@@ -80,11 +125,54 @@ public class PDFimage extends ImageView {
         marker.setStyle(Paint.Style.STROKE);
         marker.setStrokeWidth(30);
         marker.setAlpha(150);
+
+        scaleDetector = new ScaleGestureDetector(context, new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+            @Override
+            public boolean onScale(ScaleGestureDetector detector) {
+                float newZoom = Math.max(1f, Math.min(MAX_ZOOM, zoom * detector.getScaleFactor()));
+                // keep the page point under the fingers where it is
+                float focusX = detector.getFocusX();
+                float focusY = detector.getFocusY();
+                panX = focusX - (focusX - panX) * newZoom / zoom;
+                panY = focusY - (focusY - panY) * newZoom / zoom;
+                zoom = newZoom;
+                applyZoom();
+                return true;
+            }
+        });
+        // strokes can be drawn before the first page arrives
+        setCurrentIndex(0);
     }
 
     // set image as background
     public void setImage(Bitmap bitmap) {
         this.bitmap = bitmap;
+        this.setImageBitmap(bitmap);
+    }
+
+    // draw into the same annotations, undo and redo history as another view
+    // used by the continuous scroll mode, where each page has its own PDFimage
+    public void shareAnnotations(PDFimage owner) {
+        pathMap = owner.pathMap;
+        drawPaths = owner.drawPaths;
+        indexMap = owner.indexMap;
+        undoStack = owner.undoStack;
+        redoStack = owner.redoStack;
+    }
+
+    // forget every stroke and the undo/redo history, when another document is opened
+    public void clearAnnotations() {
+        pathMap.clear();
+        drawPaths.clear();
+        indexMap.clear();
+        undoStack.clear();
+        redoStack.clear();
+        setCurrentIndex(currentIndex);
+        invalidate();
+    }
+
+    public void setPartialErase(boolean partialErase) {
+        this.partialErase = partialErase;
     }
 
     // set brush characteristics
@@ -103,74 +191,187 @@ public class PDFimage extends ImageView {
         }
     }
 
+    public void setTileManager(TileManager tileManager) {
+        this.tileManager = tileManager;
+    }
+
+    // rebuild the matrix after a zoom/pan change, keeping the page over the whole view
+    // the re-render at the new zoom waits until changes stop for SETTLE_DELAY
+    private void applyZoom() {
+        panX = Math.max(getWidth() * (1 - zoom), Math.min(0, panX));
+        panY = Math.max(getHeight() * (1 - zoom), Math.min(0, panY));
+        zoomMatrix.setScale(zoom, zoom);
+        zoomMatrix.postTranslate(panX, panY);
+        zoomMatrix.invert(inverseZoom);
+        removeCallbacks(settle);
+        postDelayed(settle, SETTLE_DELAY);
+        invalidate();
+    }
+
+    // move the page with the centre of the fingers on screen
+    private void pan(MotionEvent event) {
+        int action = event.getActionMasked();
+        float focusX = 0, focusY = 0;
+        int count = event.getPointerCount();
+        for (int i = 0; i < count; i++) {
+            focusX += event.getX(i);
+            focusY += event.getY(i);
+        }
+        focusX /= count;
+        focusY /= count;
+        // the focus jumps when a finger is added or lifted, only follow it within a move
+        if (action == MotionEvent.ACTION_MOVE && panning) {
+            panX += focusX - lastFocusX;
+            panY += focusY - lastFocusY;
+            applyZoom();
+        }
+        lastFocusX = focusX;
+        lastFocusY = focusY;
+        panning = action == MotionEvent.ACTION_DOWN || action == MotionEvent.ACTION_POINTER_DOWN
+                || action == MotionEvent.ACTION_MOVE;
+    }
+
     public void setCurrentIndex(int index) {
         currentIndex = index;
         if (!pathMap.containsKey(index)) {
-            pathMap.put(index, new Pair<>(new ArrayList<Path>(), new ArrayList<Path>()));
+            pathMap.put(index, new Pair<>(new ArrayList<Stroke>(), new ArrayList<Stroke>()));
+            indexMap.put(index, new StrokeIndex());
         }
     }
 
+    // put a stroke on a page, in its pen or marker list and in the page's index
+    private void addStroke(int index, Stroke stroke) {
+        Pair<ArrayList<Stroke>, ArrayList<Stroke>> strokes = pathMap.get(index);
+        (stroke.tool == Tool.PEN ? strokes.first : strokes.second).add(stroke);
+        indexMap.get(index).add(stroke);
+    }
+
+    private void removeStroke(int index, Stroke stroke) {
+        Pair<ArrayList<Stroke>, ArrayList<Stroke>> strokes = pathMap.get(index);
+        (stroke.tool == Tool.PEN ? strokes.first : strokes.second).remove(stroke);
+        indexMap.get(index).remove(stroke);
+    }
+
     // capture touch events (down/move/up) to create a path
     // and use that to create a stroke that we can draw
+    // two fingers zoom and pan; so does one finger when no tool is selected
     @Override
     public boolean onTouchEvent(MotionEvent event) {
-        switch (event.getAction()) {
+        // zoom needs tiles, which only the single page view has
+        if (tileManager != null) {
+            scaleDetector.onTouchEvent(event);
+            if (event.getPointerCount() > 1 || scaleDetector.isInProgress() || tool == null) {
+                // a second finger turns a stroke in progress into a gesture
+                stroke = null;
+                finishErase();
+                pan(event);
+                return true;
+            }
+        }
+        // nothing to draw on until the page arrives
+        if (!updatePageMatrix()) {
+            return true;
+        }
+        touchMatrix.set(inverseZoom);
+        touchMatrix.postConcat(inversePage);
+        float[] point = {event.getX(), event.getY()};
+        touchMatrix.mapPoints(point);
+        float x = point[0];
+        float y = point[1];
+        switch (event.getActionMasked()) {
             case MotionEvent.ACTION_DOWN:
                 Log.d(LOGNAME, "Action down");
+                if (tool != null && getParent() != null) {
+                    // keep a scrolling parent from taking over the stroke
+                    getParent().requestDisallowInterceptTouchEvent(true);
+                }
                 if (tool == Tool.ERASER) {
-                    ArrayList<UndoablePath> modifiedPaths = erase(event.getX(), event.getY());
-                    undoStack.push(new UndoableEdit(currentIndex, modifiedPaths));
-                    redoStack.clear();
+                    erased = new ArrayList<>();
+                    sweep[0] = x;
+                    sweep[1] = y;
+                    erase(sweep, 1);
+                    eraseX = x;
+                    eraseY = y;
                 } else if (tool == Tool.PEN || tool == Tool.MARKER) {
-                    path = new Path();
-                    path.moveTo(event.getX(), event.getY());
+                    // the brush is as wide on screen at any zoom, so zoomed in it draws finer on the page
+                    stroke = new Stroke(tool, touchMatrix.mapRadius(paint.getStrokeWidth()));
+                    stroke.add(x, y);
                 }
                 break;
             case MotionEvent.ACTION_MOVE:
                 Log.d(LOGNAME, "Action move");
-                if (tool == Tool.PEN || tool == Tool.MARKER) {
-                    path.lineTo(event.getX(), event.getY());
+                if ((tool == Tool.PEN || tool == Tool.MARKER) && stroke != null) {
+                    // points the touch screen sampled since the last event, then the current one
+                    for (int i = 0; i < event.getHistorySize(); i++) {
+                        point[0] = event.getHistoricalX(i);
+                        point[1] = event.getHistoricalY(i);
+                        touchMatrix.mapPoints(point);
+                        stroke.add(point[0], point[1]);
+                    }
+                    stroke.add(x, y);
+                } else if (tool == Tool.ERASER && erased != null) {
+                    // sweep from the last position through every sample since, in one hit test
+                    int count = event.getHistorySize() + 2;
+                    if (sweep.length < count * 2) {
+                        sweep = new float[count * 4];
+                    }
+                    sweep[0] = eraseX;
+                    sweep[1] = eraseY;
+                    for (int i = 0; i < event.getHistorySize(); i++) {
+                        point[0] = event.getHistoricalX(i);
+                        point[1] = event.getHistoricalY(i);
+                        touchMatrix.mapPoints(point);
+                        sweep[i * 2 + 2] = point[0];
+                        sweep[i * 2 + 3] = point[1];
+                    }
+                    sweep[count * 2 - 2] = x;
+                    sweep[count * 2 - 1] = y;
+                    erase(sweep, count);
+                    eraseX = x;
+                    eraseY = y;
                 }
                 break;
+            case MotionEvent.ACTION_CANCEL:
+                stroke = null;
+                finishErase();
+                break;
             case MotionEvent.ACTION_UP:
                 Log.d(LOGNAME, "Action up");
-                if (tool == Tool.PEN) {
-                    pathMap.get(currentIndex).first.add(path);
-                    undoStack.push(new UndoableEdit(currentIndex, new ArrayList<>(Arrays.asList(new UndoablePath(path, tool, Tool.ERASER)))));
-                    redoStack.clear();
-                } else if (tool == Tool.MARKER) {
-                    pathMap.get(currentIndex).second.add(path);
-                    undoStack.push(new UndoableEdit(currentIndex, new ArrayList<>(Arrays.asList(new UndoablePath(path, tool, Tool.ERASER)))));
+                finishErase();
+                if (stroke == null) {
+                    break;
+                }
+                if (tool == Tool.PEN || tool == Tool.MARKER) {
+                    addStroke(currentIndex, stroke);
+                    undoStack.push(new UndoableEdit(currentIndex, new ArrayList<>(Arrays.asList(new UndoablePath(stroke, tool, Tool.ERASER)))));
                     redoStack.clear();
                 }
+                Log.d(LOGNAME, "stroke of " + stroke.size() + " points, " + stroke.getRetainedBytes() + " bytes");
+                stroke = null;
                 break;
         }
+        invalidate();
         return true;
     }
 
     public int undo() {
         if (!undoStack.empty()) {
             UndoableEdit edit = undoStack.pop();
-            for (UndoablePath p : edit.paths) {
+            // last change first: a partial erase can cut a piece it added earlier in the same gesture
+            for (int i = edit.paths.size() - 1; i >= 0; i--) {
+                UndoablePath p = edit.paths.get(i);
                 switch (p.command) {
                     case PEN:
-                        pathMap.get(edit.index).first.add(p.path);
-                        redoStack.push(edit.reverse());
-                        break;
                     case MARKER:
-                        pathMap.get(edit.index).second.add(p.path);
-                        redoStack.push(edit.reverse());
+                        addStroke(edit.index, p.path);
                         break;
                     case ERASER:
-                        if (p.original == Tool.PEN) {
-                            pathMap.get(edit.index).first.remove(p.path);
-                        } else if (p.original == Tool.MARKER) {
-                            pathMap.get(edit.index).second.remove(p.path);
-                        }
-                        redoStack.push(edit.reverse());
+                        removeStroke(edit.index, p.path);
                         break;
                 }
             }
+            redoStack.push(edit.reverse());
+            invalidate();
             return edit.index;
         }
         return -1;
@@ -182,88 +383,170 @@ public class PDFimage extends ImageView {
             for (UndoablePath p : edit.paths) {
                 switch (p.command) {
                     case PEN:
-                        pathMap.get(edit.index).first.add(p.path);
-                        undoStack.push(edit.reverse());
-                        break;
                     case MARKER:
-                        pathMap.get(edit.index).second.add(p.path);
-                        undoStack.push(edit.reverse());
+                        addStroke(edit.index, p.path);
                         break;
                     case ERASER:
-                        if (p.original == Tool.PEN) {
-                            pathMap.get(edit.index).first.remove(p.path);
-                            undoStack.push(edit.reverse());
-                        } else if (p.original == Tool.MARKER) {
-                            pathMap.get(edit.index).second.remove(p.path);
-                            undoStack.push(edit.reverse());
-                        }
+                        removeStroke(edit.index, p.path);
                         break;
                 }
             }
+            undoStack.push(edit.reverse());
+            invalidate();
             return edit.index;
         }
         return -1;
     }
 
-    public ArrayList<UndoablePath> erase(float x, float y) {
-        final int radius = 20;
-        final int maxLayout = 2000;
-
-        ArrayList<Path> penPaths = new ArrayList<>();
-        ArrayList<Path> markerPaths = new ArrayList<>();
-        ArrayList<UndoablePath> undoablePaths = new ArrayList<>();
-        Path touchPointPath = new Path();
-
-        // find overlap, reference: https://stackoverflow.com/questions/11184397/path-intersection-in-android
-        for (Path p : pathMap.get(currentIndex).first) {
-            touchPointPath.addCircle(x, y, radius, Path.Direction.CW);
-            Region clip = new Region(0, 0, maxLayout, maxLayout);
-            Region regionTouch = new Region();
-            regionTouch.setPath(touchPointPath, clip);
-            Region regionPath = new Region();
-            regionPath.setPath(p, clip);
-            if (!regionTouch.quickReject(regionPath) && regionTouch.op(regionPath, Region.Op.INTERSECT)) {
-                penPaths.add(p);
-            }
+    // remove every stroke the eraser touches as it moves through the count points in sweep
+    // (x, y pairs), adding them to the gesture's edit
+    // in partial mode a touched stroke is replaced by the pieces the eraser missed; the edit
+    // records the original coming out and the pieces going in, so undo puts the original back
+    // one index query covers the whole sweep; candidates are tested against each step of it
+    private void erase(float[] sweep, int count) {
+        float left = sweep[0], top = sweep[1], right = sweep[0], bottom = sweep[1];
+        for (int i = 1; i < count; i++) {
+            left = Math.min(left, sweep[i * 2]);
+            right = Math.max(right, sweep[i * 2]);
+            top = Math.min(top, sweep[i * 2 + 1]);
+            bottom = Math.max(bottom, sweep[i * 2 + 1]);
         }
-        for (Path p : pathMap.get(currentIndex).second) {
-            touchPointPath.addCircle(x, y, radius, Path.Direction.CW);
-            Region clip = new Region(0, 0, maxLayout, maxLayout);
-            Region regionTouch = new Region();
-            regionTouch.setPath(touchPointPath, clip);
-            Region regionPath = new Region();
-            regionPath.setPath(p, clip);
-            if (!regionTouch.quickReject(regionPath) && regionTouch.op(regionPath, Region.Op.INTERSECT)) {
-                markerPaths.add(p);
+        StrokeIndex strokeIndex = indexMap.get(currentIndex);
+        if (strokeIndex == null) {
+            return;
+        }
+        // touchMatrix was set up for this event, so the eraser covers as much screen at any zoom
+        float radius = touchMatrix.mapRadius(ERASER_RADIUS);
+        for (Stroke p : strokeIndex.query(left - radius, top - radius, right + radius, bottom + radius)) {
+            if (partialErase) {
+                ArrayList<Stroke> pieces = p.cut(sweep, count, radius);
+                if (pieces != null) {
+                    removeStroke(currentIndex, p);
+                    erased.add(new UndoablePath(p, Tool.ERASER, p.tool));
+                    for (Stroke piece : pieces) {
+                        addStroke(currentIndex, piece);
+                        erased.add(new UndoablePath(piece, piece.tool, Tool.ERASER));
+                    }
+                }
+                continue;
+            }
+            boolean hit = count == 1 && p.intersectsCircle(sweep[0], sweep[1], radius);
+            for (int i = 0; i < count - 1 && !hit; i++) {
+                hit = p.intersectsCapsule(sweep[i * 2], sweep[i * 2 + 1], sweep[i * 2 + 2], sweep[i * 2 + 3], radius);
+            }
+            if (hit) {
+                removeStroke(currentIndex, p);
+                erased.add(new UndoablePath(p, Tool.ERASER, p.tool));
             }
         }
+    }
 
-        // remove
-        for (Path p : penPaths) {
-            pathMap.get(currentIndex).first.remove(p);
-            undoablePaths.add(new UndoablePath(p, Tool.ERASER, Tool.PEN));
+    // the eraser lifted: everything it took becomes one undoable edit
+    private void finishErase() {
+        if (erased != null && !erased.isEmpty()) {
+            undoStack.push(new UndoableEdit(currentIndex, erased));
+            redoStack.clear();
         }
-        for (Path p : markerPaths) {
-            pathMap.get(currentIndex).second.remove(p);
-            undoablePaths.add(new UndoablePath(p, Tool.ERASER, Tool.MARKER));
+        erased = null;
+    }
+
+    // draw the tiles covering the visible part of the page, plus a one tile margin
+    // missing tiles are requested from the TileManager, the scaled-up page shows through until they arrive
+    @SuppressLint("NewApi")
+    private void drawTiles(Canvas canvas) {
+        if (tileManager == null || bitmap == null || tileZoom <= 1f) {
+            return;
         }
+        final int size = TileManager.TILE_SIZE;
+
+        // where the page sits in the view at zoom 1
+        pageRect.set(0, 0, bitmap.getWidth(), bitmap.getHeight());
+        getImageMatrix().mapRect(pageRect);
+        int width = Math.round(pageRect.width() * tileZoom);
+        int height = Math.round(pageRect.height() * tileZoom);
+        int columns = (width + size - 1) / size;
+        int rows = (height + size - 1) / size;
+
+        // visible part of the view, in pixels of the zoomed page
+        visibleRect.set(0, 0, getWidth(), getHeight());
+        inverseZoom.mapRect(visibleRect);
+        visibleRect.offset(-pageRect.left, -pageRect.top);
+        int firstColumn = Math.max(0, (int) Math.floor(visibleRect.left * tileZoom / size) - 1);
+        int lastColumn = Math.min(columns - 1, (int) Math.floor(visibleRect.right * tileZoom / size) + 1);
+        int firstRow = Math.max(0, (int) Math.floor(visibleRect.top * tileZoom / size) - 1);
+        int lastRow = Math.min(rows - 1, (int) Math.floor(visibleRect.bottom * tileZoom / size) + 1);
 
-        return undoablePaths;
+        canvas.save();
+        canvas.translate(pageRect.left, pageRect.top);
+        canvas.scale(1 / tileZoom, 1 / tileZoom);
+        for (int y = firstRow; y <= lastRow; y++) {
+            for (int x = firstColumn; x <= lastColumn; x++) {
+                Bitmap tile = tileManager.getTile(new TileManager.Key(currentIndex, tileZoom, width, x, y));
+                if (tile != null) {
+                    canvas.drawBitmap(tile, x * size, y * size, tilePaint);
+                }
+            }
+        }
+        canvas.restore();
     }
 
     @Override
     protected void onDraw(Canvas canvas) {
-        // draw background
-        if (bitmap != null) {
-            this.setImageBitmap(bitmap);
+        // the background bitmap is drawn by ImageView (super.onDraw)
+        canvas.save();
+        canvas.concat(zoomMatrix);
+        super.onDraw(canvas);
+        drawTiles(canvas);
+        // strokes go on top, tiles are opaque and so is a RenderQuality.RGB_565 page
+        if (updatePageMatrix()) {
+            drawStrokes(canvas);
         }
-        // draw lines over it
-        for (Path path : pathMap.get(currentIndex).first) {
-            canvas.drawPath(path, pen);
+        canvas.restore();
+    }
+
+    // where the ImageView puts the page, in page units; false while there is no page
+    private boolean updatePageMatrix() {
+        if (bitmap == null || bitmap.getWidth() == 0) {
+            return false;
         }
-        for (Path path : pathMap.get(currentIndex).second) {
-            canvas.drawPath(path, marker);
+        pageMatrix.set(getImageMatrix());
+        float scale = bitmap.getWidth() / PAGE_WIDTH;
+        pageMatrix.preScale(scale, scale);
+        return pageMatrix.invert(inversePage);
+    }
+
+    private void drawStrokes(Canvas canvas) {
+        Pair<ArrayList<Stroke>, ArrayList<Stroke>> strokes = pathMap.get(currentIndex);
+        if (strokes == null) {
+            return;
         }
-        super.onDraw(canvas);
+        canvas.save();
+        canvas.concat(pageMatrix);
+        // draw lines over it, each at the width it was drawn with
+        for (Stroke stroke : strokes.first) {
+            strokePaint.set(pen);
+            strokePaint.setStrokeWidth(stroke.width);
+            canvas.drawPath(pathFor(stroke), strokePaint);
+        }
+        for (Stroke stroke : strokes.second) {
+            strokePaint.set(marker);
+            strokePaint.setStrokeWidth(stroke.width);
+            canvas.drawPath(pathFor(stroke), strokePaint);
+        }
+        canvas.restore();
+    }
+
+    // the Path through a finished stroke's points, built once
+    private Path pathFor(Stroke stroke) {
+        Path path = drawPaths.get(stroke);
+        if (path == null) {
+            path = new Path();
+            path.moveTo(stroke.getX(0), stroke.getY(0));
+            for (int i = 1; i < stroke.size(); i++) {
+                path.lineTo(stroke.getX(i), stroke.getY(i));
+            }
+            drawPaths.put(stroke, path);
+        }
+        return path;
     }
 }
@@ -0,0 +1,148 @@
+package ca.uwaterloo.cs349.pdfreader;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.LruCache;
+
+import java.util.HashMap;
+import java.util.HashSet;
+
+// In-memory cache of rendered page bitmaps, so flipping back to a page we have
+// already seen does not have to go through PdfRenderer again.
+// Size is measured in bytes and bounded by a fraction of the app's memory class.
+public class PageCache extends LruCache<PageCache.Key, Bitmap> implements MemoryBudget.Trimmable, Metrics.Source {
+
+    // use 1/8 of the memory available to the app for page renders
+    static final int MEMORY_FRACTION = 8;
+
+    // identifies one render of one page
+    // width is the bitmap width in pixels, see RenderSizePolicy
+    public static class Key {
+        final int index;
+        final int width;
+        final int renderMode;
+
+        public Key(int index, int width, int renderMode) {
+            this.index = index;
+            this.width = width;
+            this.renderMode = renderMode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return index == other.index
+                    && width == other.width
+                    && renderMode == other.renderMode;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = index;
+            result = 31 * result + width;
+            result = 31 * result + renderMode;
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return "page " + index + " @" + width + "px mode " + renderMode;
+        }
+    }
+
+    // evicted bitmaps go back here
+    private final BitmapPool pool;
+    // bitmaps currently on screen, with how many views show them
+    // they are never handed back to the pool from under a view
+    private final HashMap<Bitmap, Integer> pinned = new HashMap<>();
+    private final HashSet<Bitmap> evictedWhilePinned = new HashSet<>();
+
+    public PageCache(int maxBytes, BitmapPool pool) {
+        super(maxBytes);
+        this.pool = pool;
+    }
+
+    // budget derived from the per-app heap limit of the device
+    public static int defaultBudget(Context context) {
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        int memoryClassBytes = activityManager.getMemoryClass() * 1024 * 1024;
+        return memoryClassBytes / MEMORY_FRACTION;
+    }
+
+    @Override
+    protected int sizeOf(Key key, Bitmap bitmap) {
+        return bitmap.getByteCount();
+    }
+
+    @Override
+    protected void entryRemoved(boolean evicted, Key key, Bitmap oldValue, Bitmap newValue) {
+        if (oldValue == newValue) {
+            return;
+        }
+        if (pinned.containsKey(oldValue)) {
+            // still displayed, release it once the last view lets go
+            evictedWhilePinned.add(oldValue);
+        } else {
+            pool.release(oldValue);
+        }
+    }
+
+    // a view started showing this bitmap
+    public void pin(Bitmap bitmap) {
+        Integer count = pinned.get(bitmap);
+        pinned.put(bitmap, count == null ? 1 : count + 1);
+    }
+
+    // a view stopped showing this bitmap
+    // it goes to the pool if nothing else shows it and it already left the cache
+    public void unpin(Bitmap bitmap) {
+        Integer count = pinned.get(bitmap);
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            pinned.put(bitmap, count - 1);
+            return;
+        }
+        pinned.remove(bitmap);
+        if (evictedWhilePinned.remove(bitmap)) {
+            pool.release(bitmap);
+        }
+    }
+
+    // cached pages, plus on-screen pages that already left the cache
+    @Override
+    public int getRetainedBytes() {
+        int total = size();
+        for (Bitmap bitmap : evictedWhilePinned) {
+            total += bitmap.getByteCount();
+        }
+        return total;
+    }
+
+    // drops the least recently used pages, pinned ones stay alive until unpinned
+    @Override
+    public void trim(float fraction) {
+        trimToSize((int) (maxSize() * fraction));
+    }
+
+    // check for a page without touching the hit/miss counters or the LRU order
+    public boolean contains(Key key) {
+        return snapshot().containsKey(key);
+    }
+
+    // hit/miss/eviction counters, for logging
+    @Override
+    public String stats() {
+        return "hits=" + hitCount() + " misses=" + missCount() + " hit ratio=" + Metrics.ratio(hitCount(), missCount())
+                + " evictions=" + evictionCount()
+                + " bytes=" + size() + "/" + maxSize();
+    }
+}
@@ -0,0 +1,182 @@
+package ca.uwaterloo.cs349.pdfreader;
+
+import android.graphics.pdf.PdfRenderer;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+import androidx.annotation.RequiresApi;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+// Size of every page of a document, in PDF points.
+// Measuring means opening each page. On the renderers that would queue behind every render
+// waiting, so it is done once per document on its own thread with its own PdfRenderer, and
+// saved next to the document. From API 26 PdfRenderer holds one process wide lock around
+// opening and rendering pages (see RendererPool), so there each page measured still waits
+// for the render in progress, just not for the whole queue.
+// The saved index is thrown away if the document's identity changes.
+public class PageGeometry {
+
+    static final String LOGNAME = "page_geometry";
+    static final String SUFFIX = ".pages";
+    // bump when the file layout changes
+    static final int VERSION = 2;
+
+    public interface Listener {
+        // called on the main thread, with null if the document could not be measured
+        void onGeometryLoaded(PageGeometry geometry);
+    }
+
+    private final int[] widths;
+    private final int[] heights;
+
+    PageGeometry(int[] widths, int[] heights) {
+        this.widths = widths;
+        this.heights = heights;
+    }
+
+    public int getPageCount() {
+        return widths.length;
+    }
+
+    // height over width
+    public float getAspect(int index) {
+        return heights[index] / (float) widths[index];
+    }
+
+    // height over width of the average page, for what a page of this document costs to cache
+    public float getMeanAspect() {
+        if (widths.length == 0) {
+            return RenderSizePolicy.DEFAULT_PAGE_ASPECT;
+        }
+        float total = 0;
+        for (int i = 0; i < widths.length; i++) {
+            total += getAspect(i);
+        }
+        return total / widths.length;
+    }
+
+    // where the index of a document is kept
+    static File indexFor(Document document, File cacheDir) {
+        return document.companion(cacheDir, SUFFIX);
+    }
+
+    // read the saved index, or measure the document and save it, on a background thread
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    public static void load(final Document document, final File index, final Listener listener) {
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                PageGeometry geometry = read(index, document);
+                if (geometry == null) {
+                    try {
+                        geometry = measure(document);
+                    } catch (IOException ex) {
+                        Log.d(LOGNAME, "Unable to measure " + document.getName());
+                        geometry = null;
+                    }
+                    if (geometry != null) {
+                        try {
+                            geometry.write(index, document);
+                        } catch (IOException ex) {
+                            Log.d(LOGNAME, "Unable to write " + index);
+                        }
+                    }
+                }
+                final PageGeometry result = geometry;
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onGeometryLoaded(result);
+                    }
+                });
+            }
+        }, "PageGeometry");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    static PageGeometry measure(Document document) throws IOException {
+        ParcelFileDescriptor descriptor = document.open();
+        try {
+            PdfRenderer renderer = new PdfRenderer(descriptor);
+            try {
+                int count = renderer.getPageCount();
+                int[] widths = new int[count];
+                int[] heights = new int[count];
+                for (int i = 0; i < count; i++) {
+                    PdfRenderer.Page page = renderer.openPage(i);
+                    widths[i] = page.getWidth();
+                    heights[i] = page.getHeight();
+                    page.close();
+                }
+                Log.d(LOGNAME, "measured " + count + " pages");
+                return new PageGeometry(widths, heights);
+            } finally {
+                renderer.close();
+            }
+        } finally {
+            descriptor.close();
+        }
+    }
+
+    // the saved index, or null if there is none or it belongs to another version of the document
+    static PageGeometry read(File index, Document document) {
+        if (!index.exists()) {
+            return null;
+        }
+        try {
+            DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(index)));
+            try {
+                if (input.readInt() != VERSION || !input.readUTF().equals(document.getIdentity())) {
+                    return null;
+                }
+                int count = input.readInt();
+                int[] widths = new int[count];
+                int[] heights = new int[count];
+                for (int i = 0; i < count; i++) {
+                    widths[i] = input.readInt();
+                    heights[i] = input.readInt();
+                }
+                return new PageGeometry(widths, heights);
+            } finally {
+                input.close();
+            }
+        } catch (IOException ex) {
+            Log.d(LOGNAME, "Unable to read " + index);
+            return null;
+        }
+    }
+
+    // save to a temporary file first, so a half written index is never picked up
+    void write(File index, Document document) throws IOException {
+        File temp = new File(index.getPath() + ".tmp");
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            output.writeInt(VERSION);
+            output.writeUTF(document.getIdentity());
+            output.writeInt(widths.length);
+            for (int i = 0; i < widths.length; i++) {
+                output.writeInt(widths[i]);
+                output.writeInt(heights[i]);
+            }
+        } finally {
+            output.close();
+        }
+        if (!temp.renameTo(index)) {
+            temp.delete();
+            throw new IOException("Unable to rename " + temp);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package ca.uwaterloo.cs349.pdfreader;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.view.Gravity;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.ImageView;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+// Cells of the page grid: a thumbnail with the page number under it.
+// GridView only asks for the cells on screen and hands back cells that scrolled off,
+// so only visible pages request thumbnails.
+public class PageGridAdapter extends BaseAdapter {
+
+    private final Context context;
+    private final ThumbnailCache thumbnails;
+    private final int pageCount;
+
+    // views of one recycled cell
+    static class Cell {
+        ImageView image;
+        TextView label;
+    }
+
+    public PageGridAdapter(Context context, ThumbnailCache thumbnails, int pageCount) {
+        this.context = context;
+        this.thumbnails = thumbnails;
+        this.pageCount = pageCount;
+    }
+
+    @Override
+    public int getCount() {
+        return pageCount;
+    }
+
+    @Override
+    public Object getItem(int position) {
+        return position;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return position;
+    }
+
+    @SuppressLint("NewApi")
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        Cell cell;
+        if (convertView == null) {
+            LinearLayout layout = new LinearLayout(context);
+            layout.setOrientation(LinearLayout.VERTICAL);
+            layout.setGravity(Gravity.CENTER_HORIZONTAL);
+            cell = new Cell();
+            cell.image = new ImageView(context);
+            cell.image.setLayoutParams(new LinearLayout.LayoutParams(thumbnails.getWidth(), Math.round(thumbnails.getWidth() * 1.3f)));
+            // renders are transparent where the page is blank
+            cell.image.setBackgroundColor(Color.WHITE);
+            cell.label = new TextView(context);
+            cell.label.setGravity(Gravity.CENTER);
+            layout.addView(cell.image);
+            layout.addView(cell.label);
+            layout.setTag(cell);
+            convertView = layout;
+        } else {
+            cell = (Cell) convertView.getTag();
+        }
+        Bitmap thumbnail = thumbnails.get(position);
+        cell.image.setImageBitmap(thumbnail);
+        cell.label.setText(String.valueOf(position + 1));
+        return convertView;
+    }
+}
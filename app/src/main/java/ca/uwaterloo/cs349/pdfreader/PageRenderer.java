@@ -0,0 +1,213 @@
+package ca.uwaterloo.cs349.pdfreader;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.pdf.PdfRenderer;
+import android.os.Build;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+import androidx.annotation.RequiresApi;
+
+import java.io.IOException;
+
+// Render thread working on a PdfRenderer.
+// PdfRenderer is not thread safe and only allows one open page at a time, so every
+// openPage/render/close of it holds its Pdf's lock. Everything around that (reading the
+// disk cache, converting to the stored quality) runs unlocked. It runs whatever the
+// RenderScheduler hands it, one page at a time; the jobs hand finished bitmaps back to
+// the main thread. RendererPool runs several of these side by side.
+@RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+public class PageRenderer extends Thread {
+
+    final String LOGNAME = "page_renderer";
+
+    public interface Callback {
+        // called on the main thread
+        void onPageRendered(PageCache.Key key, Bitmap bitmap);
+
+        // called on the main thread
+        void onTileRendered(TileManager.Key key, Bitmap tile);
+
+        // called on the main thread
+        void onThumbnailRendered(PageCache.Key key, Bitmap thumbnail);
+    }
+
+    // an open document, possibly used by several renderers; lock it around page access
+    static class Pdf {
+        private final ParcelFileDescriptor parcelFileDescriptor;
+        private final PdfRenderer pdfRenderer;
+        private int users;
+
+        Pdf(ParcelFileDescriptor parcelFileDescriptor, int users) throws IOException {
+            this.parcelFileDescriptor = parcelFileDescriptor;
+            this.users = users;
+            try {
+                pdfRenderer = new PdfRenderer(parcelFileDescriptor);
+            } catch (IOException ex) {
+                parcelFileDescriptor.close();
+                throw ex;
+            }
+        }
+
+        // the last renderer done with the document closes it, on its own thread
+        synchronized void release() {
+            if (--users > 0) {
+                return;
+            }
+            pdfRenderer.close();
+            try {
+                parcelFileDescriptor.close();
+            } catch (IOException ex) {
+                Log.d("page_renderer", "Unable to close PDF file");
+            }
+        }
+    }
+
+    private final Pdf pdf;
+    private final PdfRenderer pdfRenderer;
+    private final int pageCount;
+    private final BitmapPool pool;
+    private final DiskPageCache diskCache;
+    private final RenderScheduler scheduler;
+    private final Metrics metrics;
+    // every thumbnail is rendered into this one bitmap, then copied out at its exact size
+    private Bitmap thumbnailScratch;
+    // tallest thumbnail, as a multiple of its width
+    static final int THUMBNAIL_MAX_ASPECT = 2;
+
+    // what page renders are converted to before they are handed over
+    private volatile RenderQuality quality = RenderQuality.ARGB_8888;
+
+    public PageRenderer(Pdf pdf, BitmapPool pool, DiskPageCache diskCache, RenderScheduler scheduler, Metrics metrics) {
+        super("PageRenderer");
+        this.pdf = pdf;
+        this.pool = pool;
+        this.diskCache = diskCache;
+        this.scheduler = scheduler;
+        this.metrics = metrics;
+        // the document is already parsed, and this lets the main thread know the page count right away
+        pdfRenderer = pdf.pdfRenderer;
+        synchronized (pdf) {
+            pageCount = pdfRenderer.getPageCount();
+        }
+
+        start();
+    }
+
+    @Override
+    public void run() {
+        // hashing the document for the disk cache reads the whole file, keep it off the main thread
+        // only the first renderer of a pool does it, the others start rendering right away
+        diskCache.open();
+        RenderScheduler.Job job;
+        while ((job = scheduler.take()) != null) {
+            job.run(this);
+        }
+        // the scheduler was closed
+        pdf.release();
+    }
+
+    // start waiting for the document; pair with locked() once inside synchronized (pdf)
+    private long waitForPdf() {
+        return metrics.begin(Metrics.PDF_LOCK_WAIT);
+    }
+
+    private void locked(long waitStart) {
+        metrics.end(Metrics.PDF_LOCK_WAIT, waitStart);
+    }
+
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    public void setQuality(RenderQuality quality) {
+        this.quality = quality;
+    }
+
+    // runs on the render thread
+    Bitmap renderPage(PageCache.Key key) {
+        // a render saved by an earlier run is cheaper to decode than to render again
+        Bitmap stored = diskCache.get(DiskPageCache.Kind.PAGE, key);
+        if (stored != null) {
+            return quality.convert(stored, pool);
+        }
+        Bitmap bitmap;
+        long wait = waitForPdf();
+        synchronized (pdf) {
+            locked(wait);
+            long start = metrics.begin(Metrics.PAGE_RENDER);
+            // Use `openPage` to open a specific page in PDF.
+            PdfRenderer.Page page = pdfRenderer.openPage(key.index);
+            // fit the page to the requested width, keeping its aspect ratio
+            float scale = RenderSizePolicy.scale(key.width, page.getWidth());
+            int width = key.width;
+            int height = Math.round(page.getHeight() * scale);
+            // Important: the destination bitmap must be ARGB (not RGB).
+            bitmap = pool.acquire(width, height, Bitmap.Config.ARGB_8888);
+
+            // Here, we render the page onto the Bitmap.
+            // The transform maps page points to bitmap pixels.
+            // Pass either RENDER_MODE_FOR_DISPLAY or RENDER_MODE_FOR_PRINT for the last parameter.
+            page.render(bitmap, null, RenderSizePolicy.transform(scale), key.renderMode);
+            // Close the page before opening another one.
+            page.close();
+            metrics.end(Metrics.PAGE_RENDER, start);
+        }
+        Log.d(LOGNAME, "rendered " + key);
+        diskCache.put(DiskPageCache.Kind.PAGE, key, bitmap);
+        return quality.convert(bitmap, pool);
+    }
+
+    // runs on the render thread
+    Bitmap renderThumbnail(PageCache.Key key) {
+        Bitmap stored = diskCache.get(DiskPageCache.Kind.THUMBNAIL, key);
+        if (stored != null) {
+            return stored;
+        }
+        if (thumbnailScratch == null || thumbnailScratch.getWidth() != key.width) {
+            thumbnailScratch = Bitmap.createBitmap(key.width, key.width * THUMBNAIL_MAX_ASPECT, Bitmap.Config.ARGB_8888);
+        }
+        thumbnailScratch.eraseColor(Color.TRANSPARENT);
+        int height;
+        long wait = waitForPdf();
+        synchronized (pdf) {
+            locked(wait);
+            long start = metrics.begin(Metrics.THUMBNAIL_RENDER);
+            PdfRenderer.Page page = pdfRenderer.openPage(key.index);
+            float scale = RenderSizePolicy.scale(key.width, page.getWidth());
+            height = Math.min(Math.round(page.getHeight() * scale), key.width * THUMBNAIL_MAX_ASPECT);
+            page.render(thumbnailScratch, null, RenderSizePolicy.transform(scale), key.renderMode);
+            page.close();
+            metrics.end(Metrics.THUMBNAIL_RENDER, start);
+        }
+
+        Bitmap thumbnail = Bitmap.createBitmap(thumbnailScratch, 0, 0, key.width, height);
+        Log.d(LOGNAME, "rendered thumbnail " + key);
+        diskCache.put(DiskPageCache.Kind.THUMBNAIL, key, thumbnail);
+        return thumbnail;
+    }
+
+    // runs on the render thread
+    Bitmap renderTile(TileManager.Key key) {
+        Bitmap tile = pool.acquire(TileManager.TILE_SIZE, TileManager.TILE_SIZE, Bitmap.Config.ARGB_8888);
+        // tiles cover the blurry page underneath, which would show through a transparent
+        // background around the anti-aliased edges of the text
+        tile.eraseColor(Color.WHITE);
+        long wait = waitForPdf();
+        synchronized (pdf) {
+            locked(wait);
+            long start = metrics.begin(Metrics.TILE_RENDER);
+            PdfRenderer.Page page = pdfRenderer.openPage(key.index);
+            // scale the page to the zoomed width, then shift so this tile's corner lands at (0, 0)
+            // anything outside the tile falls off the bitmap and is not drawn
+            Matrix transform = RenderSizePolicy.transform(RenderSizePolicy.scale(key.width, page.getWidth()));
+            transform.postTranslate(-key.x * TileManager.TILE_SIZE, -key.y * TileManager.TILE_SIZE);
+            page.render(tile, null, transform, PdfRenderer.Page.RENDER_MODE_FOR_DISPLAY);
+            page.close();
+            metrics.end(Metrics.TILE_RENDER, start);
+        }
+        Log.d(LOGNAME, "rendered " + key);
+        return tile;
+    }
+}
@@ -0,0 +1,74 @@
+package ca.uwaterloo.cs349.pdfreader;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorMatrix;
+import android.graphics.ColorMatrixColorFilter;
+import android.graphics.Paint;
+
+// How page renders are stored once rendered.
+// PdfRenderer can only render into ARGB_8888, so pages are always rendered at full quality
+// and then converted down before they are cached:
+// RGB_565 halves the memory of a page, on a white background,
+// GRAYSCALE quarters it, keeping only how dark each pixel is as an ALPHA_8 mask, which
+// ImageView draws in black. That is close to lossless for text-only papers.
+public enum RenderQuality {
+    ARGB_8888(4), RGB_565(2), GRAYSCALE(1);
+
+    // keep at least this many pages in the page cache (current one, neighbours, some history)
+    static final int MIN_CACHED_PAGES = 6;
+
+    // alpha = how dark the pixel is: A - (0.299 R + 0.587 G + 0.114 B), clamped at 0
+    // exact for opaque pixels and for anti-aliased black text, transparent stays transparent
+    private static final float[] DARKNESS = {
+            0, 0, 0, 0, 0,
+            0, 0, 0, 0, 0,
+            0, 0, 0, 0, 0,
+            -0.299f, -0.587f, -0.114f, 1, 0,
+    };
+
+    final int bytesPerPixel;
+
+    RenderQuality(int bytesPerPixel) {
+        this.bytesPerPixel = bytesPerPixel;
+    }
+
+    // what one cached page of this size costs at this quality
+    public long bytesPerPage(int pageWidth, int pageHeight) {
+        return (long) pageWidth * pageHeight * bytesPerPixel;
+    }
+
+    // best quality that still fits MIN_CACHED_PAGES pages of this size in the budget
+    public static RenderQuality choose(int budgetBytes, int pageWidth, int pageHeight) {
+        for (RenderQuality quality : values()) {
+            if (quality.bytesPerPage(pageWidth, pageHeight) * MIN_CACHED_PAGES <= budgetBytes) {
+                return quality;
+            }
+        }
+        return GRAYSCALE;
+    }
+
+    // convert a full quality render; the original goes back to the pool unless it is returned
+    public Bitmap convert(Bitmap argb, BitmapPool pool) {
+        Bitmap converted;
+        switch (this) {
+            case RGB_565:
+                converted = pool.acquire(argb.getWidth(), argb.getHeight(), Bitmap.Config.RGB_565);
+                Canvas canvas = new Canvas(converted);
+                canvas.drawColor(Color.WHITE);
+                canvas.drawBitmap(argb, 0, 0, null);
+                break;
+            case GRAYSCALE:
+                converted = pool.acquire(argb.getWidth(), argb.getHeight(), Bitmap.Config.ALPHA_8);
+                Paint paint = new Paint();
+                paint.setColorFilter(new ColorMatrixColorFilter(new ColorMatrix(DARKNESS)));
+                new Canvas(converted).drawBitmap(argb, 0, 0, paint);
+                break;
+            default:
+                return argb;
+        }
+        pool.release(argb);
+        return converted;
+    }
+}
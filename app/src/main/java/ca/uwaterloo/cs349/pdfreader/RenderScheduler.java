@@ -0,0 +1,128 @@
+package ca.uwaterloo.cs349.pdfreader;
+
+import android.os.SystemClock;
+
+import java.util.PriorityQueue;
+
+// The one queue every PageRenderer takes its work from.
+// Requests are ordered by priority class, then first come first served. Every request is
+// a single page or tile, so a renderer goes back to the queue after each page: anything
+// more important than the work in progress waits for at most one page, never for a
+// whole batch of thumbnails or an export.
+// Keeps how many requests of each class are queued and how long they waited.
+public class RenderScheduler {
+
+    // most important first
+    public enum Priority {
+        // pages on screen, including their low resolution previews
+        VISIBLE,
+        // sharp tiles of the zoomed page
+        TILE,
+        // neighbours the user is likely to go to next
+        PREFETCH,
+        // the page grid
+        THUMBNAIL,
+        // bulk work no one is looking at yet, like writing out a whole document
+        EXPORT
+    }
+
+    // a unit of work, run on whichever renderer takes it
+    public interface Job {
+        void run(PageRenderer renderer);
+    }
+
+    private static class Request implements Comparable<Request> {
+        final Priority priority;
+        final long sequence;
+        final long queuedAt;
+        final Job job;
+
+        Request(Priority priority, long sequence, Job job) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.queuedAt = SystemClock.uptimeMillis();
+            this.job = job;
+        }
+
+        @Override
+        public int compareTo(Request other) {
+            if (priority != other.priority) {
+                return priority.ordinal() - other.priority.ordinal();
+            }
+            return sequence < other.sequence ? -1 : (sequence > other.sequence ? 1 : 0);
+        }
+    }
+
+    private final PriorityQueue<Request> queue = new PriorityQueue<>();
+    private long sequence = 0;
+    private boolean closed = false;
+    // requests dropped because a newer generation replaced them
+    private int superseded = 0;
+
+    // per priority class
+    private final int[] depth = new int[Priority.values().length];
+    private final int[] started = new int[Priority.values().length];
+    private final long[] totalWait = new long[Priority.values().length];
+    private final long[] maxWait = new long[Priority.values().length];
+
+    public synchronized void submit(Priority priority, Job job) {
+        if (closed) {
+            return;
+        }
+        queue.add(new Request(priority, sequence++, job));
+        depth[priority.ordinal()]++;
+        notify();
+    }
+
+    // called by the renderers; blocks until there is work, returns null once closed
+    synchronized Job take() {
+        while (!closed && queue.isEmpty()) {
+            try {
+                wait();
+            } catch (InterruptedException ex) {
+                return null;
+            }
+        }
+        if (closed) {
+            return null;
+        }
+        Request request = queue.poll();
+        int type = request.priority.ordinal();
+        long wait = SystemClock.uptimeMillis() - request.queuedAt;
+        depth[type]--;
+        started[type]++;
+        totalWait[type] += wait;
+        maxWait[type] = Math.max(maxWait[type], wait);
+        return request.job;
+    }
+
+    // the user moved to another page: drop everything still queued, so a burst of page
+    // flips coalesces into renders for the newest page only
+    // the caller has to re-request whatever it still wants
+    public synchronized void newGeneration() {
+        superseded += queue.size();
+        queue.clear();
+        for (int i = 0; i < depth.length; i++) {
+            depth[i] = 0;
+        }
+    }
+
+    // drop what is queued and release the renderers waiting in take()
+    public synchronized void close() {
+        closed = true;
+        queue.clear();
+        notifyAll();
+    }
+
+    public synchronized String stats() {
+        StringBuilder builder = new StringBuilder();
+        for (Priority priority : Priority.values()) {
+            int type = priority.ordinal();
+            builder.append(priority.name().toLowerCase()).append(": queued=").append(depth[type])
+                    .append(" started=").append(started[type])
+                    .append(" wait avg=").append(started[type] > 0 ? totalWait[type] / started[type] : 0)
+                    .append("ms max=").append(maxWait[type]).append("ms; ");
+        }
+        return builder.append("superseded=").append(superseded).toString();
+    }
+}
@@ -0,0 +1,54 @@
+package ca.uwaterloo.cs349.pdfreader;
+
+import android.graphics.Matrix;
+import android.util.DisplayMetrics;
+
+// Decides how big a page bitmap should be.
+// Pages are rendered to fit the width of the PDFimage view in device pixels, instead of
+// at their size in PDF points (1/72 inch). The width is rounded up to a bucket of
+// BUCKET_DP, so small layout changes do not throw away every cached render.
+public class RenderSizePolicy {
+
+    // width bucket, in dp
+    static final int BUCKET_DP = 64;
+    // keep bitmaps within what the GPU can upload as one texture
+    static final int MAX_DIMENSION = 4096;
+    // height over width of a US letter page, for estimates before a page has been opened
+    static final float DEFAULT_PAGE_ASPECT = 11f / 8.5f;
+
+    private final int bucketPixels;
+    private final int fallbackWidth;
+    private int viewWidth = 0;
+
+    public RenderSizePolicy(DisplayMetrics metrics) {
+        bucketPixels = Math.max(1, Math.round(BUCKET_DP * metrics.density));
+        // until the view is measured, assume it spans the screen
+        fallbackWidth = metrics.widthPixels;
+    }
+
+    // returns true if the new width lands in a different bucket, i.e. pages need a re-render
+    public boolean setViewWidth(int width) {
+        int previous = targetWidth();
+        viewWidth = width;
+        return targetWidth() != previous;
+    }
+
+    // width in pixels of the bitmap a page should be rendered into
+    public int targetWidth() {
+        int width = viewWidth > 0 ? viewWidth : fallbackWidth;
+        int bucketed = (width + bucketPixels - 1) / bucketPixels * bucketPixels;
+        return Math.min(bucketed, MAX_DIMENSION);
+    }
+
+    // scale from PDF points to bitmap pixels for a page of this width
+    public static float scale(int targetWidth, int pageWidth) {
+        return targetWidth / (float) pageWidth;
+    }
+
+    // transform handed to Page.render, maps the page onto the whole bitmap
+    public static Matrix transform(float scale) {
+        Matrix matrix = new Matrix();
+        matrix.setScale(scale, scale);
+        return matrix;
+    }
+}
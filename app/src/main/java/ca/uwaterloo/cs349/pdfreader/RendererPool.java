@@ -0,0 +1,169 @@
+package ca.uwaterloo.cs349.pdfreader;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import androidx.annotation.RequiresApi;
+
+import java.io.IOException;
+
+// Several PageRenderers on the same document, so work on different pages overlaps.
+// From API 26 PdfRenderer holds one process wide lock around openPage and render, so
+// separate PdfRenderers would still rasterize one page at a time while each paid for its
+// own descriptor and parsed document. There the renderers share one PdfRenderer and
+// overlap only what runs outside it: disk cache decodes and quality conversion.
+// Below API 26 each renderer opens the document on its own descriptor and rasterizes in
+// parallel. All of them take work from one RenderScheduler, so whichever renderer is
+// free next picks up the most important request.
+// Opened on a background thread (see Document.Opener), then used from the main thread only.
+@RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+public class RendererPool {
+
+    // more renderers than this stop paying off: they fight over memory bandwidth
+    static final int MAX_RENDERERS = 4;
+    // rough cost of one renderer: the parsed document plus one page bitmap in flight
+    static final int MEMORY_PER_RENDERER_MB = 48;
+    // from this API level PdfRenderer serializes rendering across the process
+    static final int SERIAL_RENDER_API = Build.VERSION_CODES.O;
+    static final int SERIAL_MAX_RENDERERS = 2;
+
+    private final Document document;
+    private final PageRenderer[] renderers;
+    private final DiskPageCache diskCache;
+    private final RenderScheduler scheduler = new RenderScheduler();
+    private final PageRenderer.Callback callback;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private boolean closed = false;
+
+    // open count renderers on the document, all sharing the pool and disk cache
+    public RendererPool(Document document, int count, BitmapPool pool, DiskPageCache diskCache,
+                        Metrics metrics, PageRenderer.Callback callback) throws IOException {
+        this.document = document;
+        this.diskCache = diskCache;
+        this.callback = callback;
+        renderers = new PageRenderer[Math.max(1, count)];
+        boolean shared = Build.VERSION.SDK_INT >= SERIAL_RENDER_API;
+        try {
+            PageRenderer.Pdf pdf = null;
+            for (int i = 0; i < renderers.length; i++) {
+                if (pdf == null || !shared) {
+                    pdf = new PageRenderer.Pdf(document.open(), shared ? renderers.length : 1);
+                }
+                renderers[i] = new PageRenderer(pdf, pool, diskCache, scheduler, metrics);
+            }
+        } catch (IOException ex) {
+            close();
+            throw ex;
+        }
+    }
+
+    // one renderer per spare core (the main thread keeps one), as far as memory allows
+    // where rendering is serial, a second renderer decoding and converting while the first
+    // rasterizes is all that overlaps
+    public static int defaultCount(Context context) {
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT && activityManager.isLowRamDevice()) {
+            return 1;
+        }
+        int byCores = Runtime.getRuntime().availableProcessors() - 1;
+        int byMemory = activityManager.getMemoryClass() / MEMORY_PER_RENDERER_MB;
+        int max = Build.VERSION.SDK_INT >= SERIAL_RENDER_API ? SERIAL_MAX_RENDERERS : MAX_RENDERERS;
+        return Math.max(1, Math.min(max, Math.min(byCores, byMemory)));
+    }
+
+    // the document the renderers are open on
+    public Document getDocument() {
+        return document;
+    }
+
+    public int size() {
+        return renderers.length;
+    }
+
+    public int getPageCount() {
+        return renderers[0].getPageCount();
+    }
+
+    public void setQuality(RenderQuality quality) {
+        for (PageRenderer renderer : renderers) {
+            renderer.setQuality(quality);
+        }
+    }
+
+    // the user moved to another page, see RenderScheduler.newGeneration
+    public void newGeneration() {
+        scheduler.newGeneration();
+    }
+
+    // queue depth and wait time of each priority class, and how the disk cache does
+    public String stats() {
+        return scheduler.stats() + "; disk: " + diskCache.stats();
+    }
+
+    // queue a render of a page
+    // urgent requests (the page the user is waiting for) go ahead of everything else
+    public void render(final PageCache.Key key, boolean urgent) {
+        RenderScheduler.Priority priority = urgent ? RenderScheduler.Priority.VISIBLE : RenderScheduler.Priority.PREFETCH;
+        scheduler.submit(priority, new RenderScheduler.Job() {
+            @Override
+            public void run(PageRenderer renderer) {
+                final Bitmap bitmap = renderer.renderPage(key);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!closed) {
+                            callback.onPageRendered(key, bitmap);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    // queue a render of one tile of a zoomed page, ahead of prefetches
+    public void renderTile(final TileManager.Key key) {
+        scheduler.submit(RenderScheduler.Priority.TILE, new RenderScheduler.Job() {
+            @Override
+            public void run(PageRenderer renderer) {
+                final Bitmap tile = renderer.renderTile(key);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!closed) {
+                            callback.onTileRendered(key, tile);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    // queue a thumbnail render behind all page work
+    public void renderThumbnail(final PageCache.Key key) {
+        scheduler.submit(RenderScheduler.Priority.THUMBNAIL, new RenderScheduler.Job() {
+            @Override
+            public void run(PageRenderer renderer) {
+                final Bitmap thumbnail = renderer.renderThumbnail(key);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!closed) {
+                            callback.onThumbnailRendered(key, thumbnail);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    // do this before you quit!
+    // drops anything still queued; each renderer closes itself once its current page is done
+    public void close() {
+        closed = true;
+        scheduler.close();
+        diskCache.close();
+    }
+}
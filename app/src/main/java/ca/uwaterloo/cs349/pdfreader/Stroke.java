@@ -0,0 +1,364 @@
+package ca.uwaterloo.cs349.pdfreader;
+
+import java.util.ArrayList;
+
+// One pen or marker stroke: the tool, its width, and the points it went through.
+// Points are packed as x, y pairs in one float array that grows as the stroke is drawn,
+// and the bounding box is kept up to date as points are added. Nothing here depends on
+// android.graphics; PDFimage builds a Path from the points when it first draws a stroke.
+// Coordinates and width are in page units (see PDFimage.PAGE_WIDTH).
+public class Stroke {
+
+    static final int INITIAL_CAPACITY = 16; // points
+    // object header and fields, plus the header of the points array, on a 32 bit runtime
+    static final int OVERHEAD_BYTES = 48 + 12;
+    // bisection steps when cutting a segment at the eraser; 20 halvings is well under a
+    // pixel for any segment that fits on a page
+    static final int CUT_ITERATIONS = 20;
+
+    final Tool tool;
+    final float width;
+
+    private float[] points = new float[INITIAL_CAPACITY * 2];
+    private int count = 0;
+    private float left = Float.POSITIVE_INFINITY;
+    private float top = Float.POSITIVE_INFINITY;
+    private float right = Float.NEGATIVE_INFINITY;
+    private float bottom = Float.NEGATIVE_INFINITY;
+
+    public Stroke(Tool tool, float width) {
+        this.tool = tool;
+        this.width = width;
+    }
+
+    public void add(float x, float y) {
+        if (count * 2 == points.length) {
+            float[] grown = new float[points.length * 2];
+            System.arraycopy(points, 0, grown, 0, points.length);
+            points = grown;
+        }
+        points[count * 2] = x;
+        points[count * 2 + 1] = y;
+        count++;
+        left = Math.min(left, x);
+        top = Math.min(top, y);
+        right = Math.max(right, x);
+        bottom = Math.max(bottom, y);
+    }
+
+    // number of points
+    public int size() {
+        return count;
+    }
+
+    public float getX(int i) {
+        return points[i * 2];
+    }
+
+    public float getY(int i) {
+        return points[i * 2 + 1];
+    }
+
+    // bounding box of the points, not counting the stroke width
+    public float getLeft() {
+        return left;
+    }
+
+    public float getTop() {
+        return top;
+    }
+
+    public float getRight() {
+        return right;
+    }
+
+    public float getBottom() {
+        return bottom;
+    }
+
+    // true if the stroke, drawn at its width, touches the circle
+    public boolean intersectsCircle(float x, float y, float radius) {
+        return intersectsCapsule(x, y, x, y, radius);
+    }
+
+    // true if the stroke, drawn at its width, touches the capsule swept by a circle moving
+    // from (x1, y1) to (x2, y2): the distance between the path of the circle's centre and
+    // some segment of the stroke is at most the radius plus half the stroke width
+    // strokes whose bounds are out of reach are ruled out first
+    public boolean intersectsCapsule(float x1, float y1, float x2, float y2, float radius) {
+        float reach = radius + width / 2;
+        if (count == 0 || Math.max(x1, x2) < left - reach || Math.min(x1, x2) > right + reach
+                || Math.max(y1, y2) < top - reach || Math.min(y1, y2) > bottom + reach) {
+            return false;
+        }
+        float reachSquared = reach * reach;
+        if (count == 1) {
+            return distanceSquared(points[0], points[1], x1, y1, x2, y2) <= reachSquared;
+        }
+        for (int i = 0; i < count - 1; i++) {
+            if (segmentDistanceSquared(points[i * 2], points[i * 2 + 1], points[i * 2 + 2], points[i * 2 + 3],
+                    x1, y1, x2, y2) <= reachSquared) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // what is left of the stroke after the eraser moved through the count points in sweep
+    // (x, y pairs): the runs of the polyline outside its reach, as new strokes of the same
+    // tool and width, in drawing order. null if the eraser does not touch the stroke.
+    // Each segment is cut where it enters and leaves the eraser's reach, so a long straight
+    // segment keeps the parts the eraser missed. A stroke the eraser only passes near is
+    // ruled out before anything is allocated; in one it does touch, only segments near the
+    // sweep are cut and the runs between them are copied over whole.
+    public ArrayList<Stroke> cut(float[] sweep, int sweepCount, float radius) {
+        float reach = radius + width / 2;
+        float sweepLeft = sweep[0], sweepTop = sweep[1], sweepRight = sweep[0], sweepBottom = sweep[1];
+        for (int k = 1; k < sweepCount; k++) {
+            sweepLeft = Math.min(sweepLeft, sweep[k * 2]);
+            sweepRight = Math.max(sweepRight, sweep[k * 2]);
+            sweepTop = Math.min(sweepTop, sweep[k * 2 + 1]);
+            sweepBottom = Math.max(sweepBottom, sweep[k * 2 + 1]);
+        }
+        if (count == 0 || sweepRight < left - reach || sweepLeft > right + reach
+                || sweepBottom < top - reach || sweepTop > bottom + reach) {
+            return null;
+        }
+        float reachSquared = reach * reach;
+        if (count == 1) {
+            // a dot is either erased or untouched
+            for (int k = 0; k < Math.max(1, sweepCount - 1); k++) {
+                int next = Math.min(k + 1, sweepCount - 1);
+                if (distanceSquared(points[0], points[1], sweep[k * 2], sweep[k * 2 + 1],
+                        sweep[next * 2], sweep[next * 2 + 1]) <= reachSquared) {
+                    return new ArrayList<>();
+                }
+            }
+            return null;
+        }
+        int first = firstTouched(sweep, sweepCount, reachSquared, sweepLeft - reach, sweepTop - reach,
+                sweepRight + reach, sweepBottom + reach);
+        if (first < 0) {
+            return null;
+        }
+
+        ArrayList<Stroke> pieces = new ArrayList<>();
+        Stroke piece = null;
+        // points from runFrom up to the current segment's start are untouched and not yet
+        // copied; they continue piece, or start one if there are at least two of them
+        int runFrom = 0;
+        // parts of the current segment inside the eraser, as (from, to) pairs along it
+        float[] inside = new float[Math.max(1, sweepCount - 1) * 2];
+        for (int i = first; i < count - 1; i++) {
+            float x1 = points[i * 2], y1 = points[i * 2 + 1];
+            float x2 = points[i * 2 + 2], y2 = points[i * 2 + 3];
+            int found = 0;
+            if (Math.max(x1, x2) >= sweepLeft - reach && Math.min(x1, x2) <= sweepRight + reach
+                    && Math.max(y1, y2) >= sweepTop - reach && Math.min(y1, y2) <= sweepBottom + reach) {
+                for (int k = 0; k < Math.max(1, sweepCount - 1); k++) {
+                    int next = Math.min(k + 1, sweepCount - 1);
+                    found = clip(x1, y1, x2, y2, sweep[k * 2], sweep[k * 2 + 1],
+                            sweep[next * 2], sweep[next * 2 + 1], reachSquared, inside, found);
+                }
+            }
+            if (found == 0) {
+                continue;
+            }
+            sortIntervals(inside, found);
+            // the untouched run ends at this segment's start
+            if (piece != null || runFrom < i || inside[0] > 0) {
+                if (piece == null) {
+                    piece = new Stroke(tool, width);
+                }
+                piece.addAll(points, runFrom, i);
+            }
+            // walk the segment, keeping what lies between the erased intervals
+            float t = 0;
+            for (int j = 0; j < found; j++) {
+                float from = inside[j * 2], to = inside[j * 2 + 1];
+                if (from > t) {
+                    if (piece == null) {
+                        piece = new Stroke(tool, width);
+                        piece.add(x1 + t * (x2 - x1), y1 + t * (y2 - y1));
+                    }
+                    piece.add(x1 + from * (x2 - x1), y1 + from * (y2 - y1));
+                }
+                if (piece != null) {
+                    pieces.add(piece);
+                    piece = null;
+                }
+                t = Math.max(t, to);
+            }
+            if (t < 1) {
+                piece = new Stroke(tool, width);
+                piece.add(x1 + t * (x2 - x1), y1 + t * (y2 - y1));
+            }
+            runFrom = i + 1;
+        }
+        if (piece != null || runFrom < count - 1) {
+            if (piece == null) {
+                piece = new Stroke(tool, width);
+            }
+            piece.addAll(points, runFrom, count - 1);
+            pieces.add(piece);
+        }
+        return pieces;
+    }
+
+    // index of the first segment within reach of a step of the sweep, or -1
+    // the box is the sweep's bounds grown by the reach
+    private int firstTouched(float[] sweep, int sweepCount, float reachSquared,
+                             float boxLeft, float boxTop, float boxRight, float boxBottom) {
+        for (int i = 0; i < count - 1; i++) {
+            float x1 = points[i * 2], y1 = points[i * 2 + 1];
+            float x2 = points[i * 2 + 2], y2 = points[i * 2 + 3];
+            if (Math.max(x1, x2) < boxLeft || Math.min(x1, x2) > boxRight
+                    || Math.max(y1, y2) < boxTop || Math.min(y1, y2) > boxBottom) {
+                continue;
+            }
+            for (int k = 0; k < Math.max(1, sweepCount - 1); k++) {
+                int next = Math.min(k + 1, sweepCount - 1);
+                if (segmentDistanceSquared(x1, y1, x2, y2, sweep[k * 2], sweep[k * 2 + 1],
+                        sweep[next * 2], sweep[next * 2 + 1]) <= reachSquared) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    // append points from to to (inclusive) of a packed array like points
+    private void addAll(float[] source, int from, int to) {
+        int added = to - from + 1;
+        if ((count + added) * 2 > points.length) {
+            float[] grown = new float[Math.max(points.length * 2, (count + added) * 2)];
+            System.arraycopy(points, 0, grown, 0, count * 2);
+            points = grown;
+        }
+        System.arraycopy(source, from * 2, points, count * 2, added * 2);
+        for (int i = count; i < count + added; i++) {
+            left = Math.min(left, points[i * 2]);
+            top = Math.min(top, points[i * 2 + 1]);
+            right = Math.max(right, points[i * 2]);
+            bottom = Math.max(bottom, points[i * 2 + 1]);
+        }
+        count += added;
+    }
+
+    // the part of the segment (x1, y1)-(x2, y2) within reach of the segment (cx1, cy1)-(cx2, cy2),
+    // appended to inside as a (from, to) pair of positions along the first segment, 0 to 1
+    // returns the new number of pairs in inside
+    // points within reach of a segment form a convex capsule, so the part inside is a single
+    // interval and the distance to the capsule's axis only falls, then rises, along the
+    // segment; the closest point and both ends of the interval are found by bisection
+    private static int clip(float x1, float y1, float x2, float y2, float cx1, float cy1, float cx2, float cy2,
+                            float reachSquared, float[] inside, int found) {
+        if (segmentDistanceSquared(x1, y1, x2, y2, cx1, cy1, cx2, cy2) > reachSquared) {
+            return found;
+        }
+        float dx = x2 - x1, dy = y2 - y1;
+        // closest point: ternary search on the convex distance
+        float low = 0, high = 1;
+        for (int n = 0; n < CUT_ITERATIONS; n++) {
+            float a = low + (high - low) / 3, b = high - (high - low) / 3;
+            if (distanceSquared(x1 + a * dx, y1 + a * dy, cx1, cy1, cx2, cy2)
+                    <= distanceSquared(x1 + b * dx, y1 + b * dy, cx1, cy1, cx2, cy2)) {
+                high = b;
+            } else {
+                low = a;
+            }
+        }
+        float closest = (low + high) / 2;
+        // where the segment enters reach, between its start and the closest point
+        float from = 0;
+        if (distanceSquared(x1, y1, cx1, cy1, cx2, cy2) > reachSquared) {
+            low = 0;
+            high = closest;
+            for (int n = 0; n < CUT_ITERATIONS; n++) {
+                float middle = (low + high) / 2;
+                if (distanceSquared(x1 + middle * dx, y1 + middle * dy, cx1, cy1, cx2, cy2) > reachSquared) {
+                    low = middle;
+                } else {
+                    high = middle;
+                }
+            }
+            from = low;
+        }
+        // and where it leaves, between the closest point and its end
+        float to = 1;
+        if (distanceSquared(x2, y2, cx1, cy1, cx2, cy2) > reachSquared) {
+            low = closest;
+            high = 1;
+            for (int n = 0; n < CUT_ITERATIONS; n++) {
+                float middle = (low + high) / 2;
+                if (distanceSquared(x1 + middle * dx, y1 + middle * dy, cx1, cy1, cx2, cy2) > reachSquared) {
+                    high = middle;
+                } else {
+                    low = middle;
+                }
+            }
+            to = high;
+        }
+        inside[found * 2] = from;
+        inside[found * 2 + 1] = to;
+        return found + 1;
+    }
+
+    // sort count (from, to) pairs by from; there are only as many as steps in one sweep
+    private static void sortIntervals(float[] intervals, int count) {
+        for (int i = 1; i < count; i++) {
+            float from = intervals[i * 2], to = intervals[i * 2 + 1];
+            int j = i - 1;
+            while (j >= 0 && intervals[j * 2] > from) {
+                intervals[j * 2 + 2] = intervals[j * 2];
+                intervals[j * 2 + 3] = intervals[j * 2 + 1];
+                j--;
+            }
+            intervals[j * 2 + 2] = from;
+            intervals[j * 2 + 3] = to;
+        }
+    }
+
+    // squared distance between the segments (ax1, ay1)-(ax2, ay2) and (bx1, by1)-(bx2, by2)
+    // 0 if they cross, otherwise the closest pair always includes an endpoint of one of them
+    static float segmentDistanceSquared(float ax1, float ay1, float ax2, float ay2,
+                                        float bx1, float by1, float bx2, float by2) {
+        if (crosses(ax1, ay1, ax2, ay2, bx1, by1, bx2, by2)) {
+            return 0;
+        }
+        return Math.min(Math.min(distanceSquared(ax1, ay1, bx1, by1, bx2, by2), distanceSquared(ax2, ay2, bx1, by1, bx2, by2)),
+                Math.min(distanceSquared(bx1, by1, ax1, ay1, ax2, ay2), distanceSquared(bx2, by2, ax1, ay1, ax2, ay2)));
+    }
+
+    // true if the segments cross properly; touching and collinear cases are left to the distance test
+    private static boolean crosses(float ax1, float ay1, float ax2, float ay2,
+                                   float bx1, float by1, float bx2, float by2) {
+        float a1 = cross(bx2 - bx1, by2 - by1, ax1 - bx1, ay1 - by1);
+        float a2 = cross(bx2 - bx1, by2 - by1, ax2 - bx1, ay2 - by1);
+        float b1 = cross(ax2 - ax1, ay2 - ay1, bx1 - ax1, by1 - ay1);
+        float b2 = cross(ax2 - ax1, ay2 - ay1, bx2 - ax1, by2 - ay1);
+        return ((a1 > 0 && a2 < 0) || (a1 < 0 && a2 > 0)) && ((b1 > 0 && b2 < 0) || (b1 < 0 && b2 > 0));
+    }
+
+    private static float cross(float x1, float y1, float x2, float y2) {
+        return x1 * y2 - y1 * x2;
+    }
+
+    // squared distance from (x, y) to the segment from (x1, y1) to (x2, y2)
+    static float distanceSquared(float x, float y, float x1, float y1, float x2, float y2) {
+        float dx = x2 - x1;
+        float dy = y2 - y1;
+        float lengthSquared = dx * dx + dy * dy;
+        // how far along the segment the closest point is, 0 at (x1, y1) and 1 at (x2, y2)
+        float t = lengthSquared > 0 ? ((x - x1) * dx + (y - y1) * dy) / lengthSquared : 0;
+        t = Math.max(0, Math.min(1, t));
+        float closestX = x1 + t * dx - x;
+        float closestY = y1 + t * dy - y;
+        return closestX * closestX + closestY * closestY;
+    }
+
+    // memory held by this stroke, for measuring the cost per point
+    public int getRetainedBytes() {
+        return OVERHEAD_BYTES + points.length * 4;
+    }
+}
@@ -0,0 +1,82 @@
+package ca.uwaterloo.cs349.pdfreader;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+
+// Uniform grid over the strokes of one page, for finding what the eraser touches.
+// Each stroke is listed in every cell its bounding box (widened by half its width)
+// overlaps, so a query only looks at strokes in the cells around the eraser instead of
+// every stroke on the page. Strokes are added and removed as they are drawn, erased,
+// undone and redone.
+public class StrokeIndex {
+
+    // cell side, in page units; a few eraser widths
+    static final int CELL_SIZE = 128;
+
+    private final HashMap<Long, ArrayList<Stroke>> cells = new HashMap<>();
+
+    private static long cellKey(int column, int row) {
+        return ((long) column << 32) | (row & 0xffffffffL);
+    }
+
+    private static int cell(float coordinate) {
+        return (int) Math.floor(coordinate / CELL_SIZE);
+    }
+
+    public void add(Stroke stroke) {
+        float margin = stroke.width / 2;
+        for (int row = cell(stroke.getTop() - margin); row <= cell(stroke.getBottom() + margin); row++) {
+            for (int column = cell(stroke.getLeft() - margin); column <= cell(stroke.getRight() + margin); column++) {
+                long key = cellKey(column, row);
+                ArrayList<Stroke> strokes = cells.get(key);
+                if (strokes == null) {
+                    strokes = new ArrayList<>();
+                    cells.put(key, strokes);
+                }
+                strokes.add(stroke);
+            }
+        }
+    }
+
+    public void remove(Stroke stroke) {
+        float margin = stroke.width / 2;
+        for (int row = cell(stroke.getTop() - margin); row <= cell(stroke.getBottom() + margin); row++) {
+            for (int column = cell(stroke.getLeft() - margin); column <= cell(stroke.getRight() + margin); column++) {
+                long key = cellKey(column, row);
+                ArrayList<Stroke> strokes = cells.get(key);
+                if (strokes != null) {
+                    strokes.remove(stroke);
+                    if (strokes.isEmpty()) {
+                        cells.remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    // strokes whose widened bounding box may overlap the rectangle, each once, oldest first per cell
+    public LinkedHashSet<Stroke> query(float left, float top, float right, float bottom) {
+        LinkedHashSet<Stroke> found = new LinkedHashSet<>();
+        for (int row = cell(top); row <= cell(bottom); row++) {
+            for (int column = cell(left); column <= cell(right); column++) {
+                ArrayList<Stroke> strokes = cells.get(cellKey(column, row));
+                if (strokes == null) {
+                    continue;
+                }
+                for (Stroke stroke : strokes) {
+                    float margin = stroke.width / 2;
+                    if (stroke.getLeft() - margin <= right && stroke.getRight() + margin >= left
+                            && stroke.getTop() - margin <= bottom && stroke.getBottom() + margin >= top) {
+                        found.add(stroke);
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    public void clear() {
+        cells.clear();
+    }
+}
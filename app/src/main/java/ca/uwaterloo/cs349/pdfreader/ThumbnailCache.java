@@ -0,0 +1,83 @@
+package ca.uwaterloo.cs349.pdfreader;
+
+import android.graphics.Bitmap;
+import android.graphics.pdf.PdfRenderer;
+import android.os.Build;
+import android.util.LruCache;
+import androidx.annotation.RequiresApi;
+
+import java.util.HashSet;
+
+// Small renders of every page for the page grid.
+// Thumbnails are rendered behind all other work on the PageRenderer threads, and are
+// also written to the DiskPageCache like any other render, so the grid fills in
+// quickly the next time the document is opened.
+// Main thread only.
+public class ThumbnailCache implements MemoryBudget.Trimmable {
+
+    // thumbnail width, in dp
+    static final int THUMBNAIL_DP = 96;
+
+    private final int width;
+    private final LruCache<Integer, Bitmap> cache;
+    private final HashSet<Integer> pendingRenders = new HashSet<>();
+    private RendererPool renderer;
+
+    public ThumbnailCache(int maxBytes, float density) {
+        width = Math.round(THUMBNAIL_DP * density);
+        cache = new LruCache<Integer, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(Integer index, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public PageCache.Key keyFor(int index) {
+        return new PageCache.Key(index, width, PdfRenderer.Page.RENDER_MODE_FOR_DISPLAY);
+    }
+
+    public void setRenderer(RendererPool renderer) {
+        this.renderer = renderer;
+        pendingRenders.clear();
+    }
+
+    // the renderer dropped its queue, forget what we asked for so it gets asked again
+    public void clearPending() {
+        pendingRenders.clear();
+    }
+
+    // returns the thumbnail if it is ready, otherwise queues a render and returns null
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    public Bitmap get(int index) {
+        Bitmap thumbnail = cache.get(index);
+        if (thumbnail == null && renderer != null && pendingRenders.add(index)) {
+            renderer.renderThumbnail(keyFor(index));
+        }
+        return thumbnail;
+    }
+
+    public void onThumbnailRendered(int index, Bitmap thumbnail) {
+        pendingRenders.remove(index);
+        cache.put(index, thumbnail);
+    }
+
+    public void clear() {
+        pendingRenders.clear();
+        cache.evictAll();
+    }
+
+    @Override
+    public int getRetainedBytes() {
+        return cache.size();
+    }
+
+    @Override
+    public void trim(float fraction) {
+        cache.trimToSize((int) (cache.maxSize() * fraction));
+    }
+}
@@ -0,0 +1,143 @@
+package ca.uwaterloo.cs349.pdfreader;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.util.Log;
+import android.util.LruCache;
+import androidx.annotation.RequiresApi;
+
+import java.util.HashSet;
+
+// Tiles for zoomed-in pages.
+// Rendering a whole page at 3-4x does not fit in the heap, so when zoomed in the page
+// is treated as a large virtual bitmap split into TILE_SIZE squares, and only the
+// tiles PDFimage needs are rendered (on the PageRenderer threads) and cached here.
+// Main thread only.
+public class TileManager implements MemoryBudget.Trimmable, Metrics.Source {
+
+    final String LOGNAME = "tile_manager";
+    static final int TILE_SIZE = 256;
+
+    // identifies one tile of one page at one zoom level
+    // width is the width in pixels of the whole virtual page bitmap at that zoom
+    public static class Key {
+        final int index;
+        final float zoomLevel;
+        final int width;
+        final int x;
+        final int y;
+
+        public Key(int index, float zoomLevel, int width, int x, int y) {
+            this.index = index;
+            this.zoomLevel = zoomLevel;
+            this.width = width;
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return index == other.index
+                    && Float.compare(zoomLevel, other.zoomLevel) == 0
+                    && width == other.width
+                    && x == other.x
+                    && y == other.y;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = index;
+            result = 31 * result + Float.floatToIntBits(zoomLevel);
+            result = 31 * result + width;
+            result = 31 * result + x;
+            result = 31 * result + y;
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return "tile " + x + "," + y + " of page " + index + " @" + zoomLevel + "x";
+        }
+    }
+
+    private final LruCache<Key, Bitmap> cache;
+    private final HashSet<Key> pendingRenders = new HashSet<>();
+    private RendererPool renderer;
+
+    public TileManager(int maxBytes, final BitmapPool pool) {
+        cache = new LruCache<Key, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(Key key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, Key key, Bitmap oldValue, Bitmap newValue) {
+                // tiles are only drawn during onDraw, so they can go straight back to the pool
+                if (oldValue != newValue) {
+                    pool.release(oldValue);
+                }
+            }
+        };
+    }
+
+    // snap a zoom factor to the levels tiles are rendered at, so nearby zooms share tiles
+    public static float zoomLevel(float zoom) {
+        return Math.round(zoom * 2) / 2f;
+    }
+
+    public void setRenderer(RendererPool renderer) {
+        this.renderer = renderer;
+        pendingRenders.clear();
+    }
+
+    // the renderer dropped its queue, forget what we asked for so it gets asked again
+    public void clearPending() {
+        pendingRenders.clear();
+    }
+
+    // returns the tile if it is ready, otherwise queues a render and returns null
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    public Bitmap getTile(Key key) {
+        Bitmap tile = cache.get(key);
+        if (tile == null && renderer != null && pendingRenders.add(key)) {
+            renderer.renderTile(key);
+        }
+        return tile;
+    }
+
+    public void onTileRendered(Key key, Bitmap tile) {
+        pendingRenders.remove(key);
+        cache.put(key, tile);
+    }
+
+    public void clear() {
+        pendingRenders.clear();
+        cache.evictAll();
+        Log.d(LOGNAME, "cleared");
+    }
+
+    @Override
+    public int getRetainedBytes() {
+        return cache.size();
+    }
+
+    @Override
+    public void trim(float fraction) {
+        cache.trimToSize((int) (cache.maxSize() * fraction));
+    }
+
+    @Override
+    public String stats() {
+        return "hits=" + cache.hitCount() + " misses=" + cache.missCount()
+                + " hit ratio=" + Metrics.ratio(cache.hitCount(), cache.missCount()) + " evictions=" + cache.evictionCount()
+                + " bytes=" + cache.size() + "/" + cache.maxSize();
+    }
+}
@@ -0,0 +1,5 @@
+package ca.uwaterloo.cs349.pdfreader;
+
+// What touching the page does: draw with the pen or the marker, or erase.
+// Also records, in the undo history, which way a stroke has to go to undo an edit.
+enum Tool {PEN, MARKER, ERASER}
@@ -0,0 +1,138 @@
+package ca.uwaterloo.cs349.pdfreader;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+// Staging a large document: how long the copy and both kinds of check take, and that only a
+// complete, unchanged copy counts as staged. Timings are printed, not asserted.
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class DocumentStagerTest {
+
+    static final int BENCHMARK_BYTES = 100 * 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // length bytes of repeating noise, without holding them all in memory
+    static class NoiseStream extends InputStream {
+        private final byte[] block = new byte[1024 * 1024];
+        private long remaining;
+        private int position = 0;
+
+        NoiseStream(long length) {
+            new Random(42).nextBytes(block);
+            remaining = length;
+        }
+
+        @Override
+        public int read() {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (remaining == 0) {
+                return -1;
+            }
+            int size = (int) Math.min(Math.min(length, remaining), block.length - position);
+            System.arraycopy(block, position, buffer, offset, size);
+            position = (position + size) % block.length;
+            remaining -= size;
+            return size;
+        }
+    }
+
+    private static void report(String what, long startNanos, long bytes) {
+        long millis = Math.max(1, (System.nanoTime() - startNanos) / 1000000);
+        System.out.println(what + ": " + millis + "ms, " + (bytes / 1024 / 1024 * 1000 / millis) + " MB/s");
+    }
+
+    @Test
+    public void stageHundredMegabytes() throws IOException {
+        File target = new File(folder.getRoot(), "large.pdf");
+
+        long start = System.nanoTime();
+        DocumentStager.stage(new NoiseStream(BENCHMARK_BYTES), target);
+        report("stage", start, BENCHMARK_BYTES);
+        assertEquals(BENCHMARK_BYTES, target.length());
+
+        // a later launch: size and modification time match, nothing is read
+        start = System.nanoTime();
+        assertTrue(DocumentStager.isStaged(target));
+        report("check", start, BENCHMARK_BYTES);
+
+        // touched since staging: the whole file is checksummed
+        assertTrue(target.setLastModified(target.lastModified() - 10000));
+        start = System.nanoTime();
+        assertTrue(DocumentStager.isStaged(target));
+        report("verify", start, BENCHMARK_BYTES);
+    }
+
+    @Test
+    public void changedContentIsNotStaged() throws IOException {
+        File target = new File(folder.getRoot(), "changed.pdf");
+        DocumentStager.stage(new NoiseStream(1024 * 1024), target);
+        long lastModified = target.lastModified();
+        RandomAccessFile file = new RandomAccessFile(target, "rw");
+        try {
+            file.seek(1000);
+            file.write(~file.read());
+        } finally {
+            file.close();
+        }
+        assertTrue(target.setLastModified(lastModified - 10000));
+        assertFalse(DocumentStager.isStaged(target));
+    }
+
+    @Test
+    public void truncatedCopyIsNotStaged() throws IOException {
+        File target = new File(folder.getRoot(), "truncated.pdf");
+        DocumentStager.stage(new NoiseStream(1024 * 1024), target);
+        RandomAccessFile file = new RandomAccessFile(target, "rw");
+        try {
+            file.setLength(1000);
+        } finally {
+            file.close();
+        }
+        assertFalse(DocumentStager.isStaged(target));
+    }
+
+    @Test
+    public void nothingThereIsNotStaged() {
+        assertFalse(DocumentStager.isStaged(new File(folder.getRoot(), "missing.pdf")));
+    }
+
+    @Test
+    public void failedCopyLeavesNothingBehind() {
+        File target = new File(folder.getRoot(), "failed.pdf");
+        try {
+            DocumentStager.stage(new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    throw new IOException("read failed");
+                }
+            }, target);
+        } catch (IOException expected) {
+            // the copy failed
+        }
+        assertFalse(target.exists());
+        assertFalse(DocumentStager.isStaged(target));
+        assertFalse(new File(target.getPath() + ".tmp").exists());
+    }
+}
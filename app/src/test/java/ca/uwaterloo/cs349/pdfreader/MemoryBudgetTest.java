@@ -0,0 +1,100 @@
+package ca.uwaterloo.cs349.pdfreader;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+// Trim levels reaching the real caches, the way the system delivers them to the app.
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class MemoryBudgetTest {
+
+    static final int PAGE_SIZE = 100;
+    static final int PAGE_BYTES = PAGE_SIZE * PAGE_SIZE * 4;
+    static final int PAGES = 10;
+
+    private BitmapPool pool;
+    private PageCache pages;
+    private MemoryBudget budget;
+
+    @Before
+    public void setUp() {
+        pool = new BitmapPool(PAGES * PAGE_BYTES);
+        pages = new PageCache(PAGES * PAGE_BYTES, pool);
+        budget = new MemoryBudget();
+        // same order as MainActivity: pages first, so what they evict is trimmed from the pool too
+        budget.register("pages", pages);
+        budget.register("pool", pool);
+        for (int i = 0; i < PAGES; i++) {
+            pages.put(new PageCache.Key(i, PAGE_SIZE, 0), Bitmap.createBitmap(PAGE_SIZE, PAGE_SIZE, Bitmap.Config.ARGB_8888));
+        }
+    }
+
+    @Test
+    public void fractionShrinksWithSeverity() {
+        assertEquals(1f, MemoryBudget.fractionFor(0), 0);
+        assertTrue(MemoryBudget.fractionFor(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW)
+                < MemoryBudget.fractionFor(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE));
+        assertTrue(MemoryBudget.fractionFor(ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL)
+                < MemoryBudget.fractionFor(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW));
+        assertTrue(MemoryBudget.fractionFor(ComponentCallbacks2.TRIM_MEMORY_MODERATE)
+                < MemoryBudget.fractionFor(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND));
+        assertEquals(0f, MemoryBudget.fractionFor(ComponentCallbacks2.TRIM_MEMORY_COMPLETE), 0);
+    }
+
+    @Test
+    public void moderateTrimReleasesThreeQuarters() {
+        assertEquals(PAGES * PAGE_BYTES, budget.getUsedBytes());
+        budget.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_MODERATE);
+        int limit = (int) (PAGES * PAGE_BYTES * MemoryBudget.fractionFor(ComponentCallbacks2.TRIM_MEMORY_MODERATE));
+        assertTrue(pages.getRetainedBytes() <= limit);
+        assertTrue(pool.getRetainedBytes() <= limit);
+        assertEquals(ComponentCallbacks2.TRIM_MEMORY_MODERATE, budget.getLastTrimLevel());
+    }
+
+    @Test
+    public void completeTrimKeepsOnlyPinnedPages() {
+        PageCache.Key shown = new PageCache.Key(0, PAGE_SIZE, 0);
+        Bitmap bitmap = pages.get(shown);
+        pages.pin(bitmap);
+        budget.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        assertEquals(PAGE_BYTES, budget.getUsedBytes());
+        assertFalse(bitmap.isRecycled());
+        // once off screen it goes to the pool like any other evicted page
+        pages.unpin(bitmap);
+        assertEquals(0, pages.getRetainedBytes());
+        assertEquals(PAGE_BYTES, pool.getRetainedBytes());
+    }
+
+    @Test
+    public void lowMemoryReleasesEverything() {
+        budget.onLowMemory();
+        assertEquals(0, budget.getUsedBytes());
+    }
+
+    @Test
+    public void runningPressureScalesReadaheadForAWhile() {
+        assertEquals(1f, budget.getPressureFraction(), 0);
+        budget.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        assertEquals(MemoryBudget.fractionFor(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW), budget.getPressureFraction(), 0);
+        // the clock is simulated, this returns at once
+        SystemClock.sleep(MemoryBudget.PRESSURE_WINDOW + 1);
+        assertEquals(1f, budget.getPressureFraction(), 0);
+    }
+
+    @Test
+    public void hiddenTrimDoesNotScaleReadahead() {
+        budget.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+        assertEquals(1f, budget.getPressureFraction(), 0);
+    }
+}
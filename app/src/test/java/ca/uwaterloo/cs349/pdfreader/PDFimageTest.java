@@ -0,0 +1,89 @@
+package ca.uwaterloo.cs349.pdfreader;
+
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+// Strokes drawn and erased through touch events, and how undo and redo bring them back.
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class PDFimageTest {
+
+    // a page exactly the size of the view and PAGE_WIDTH wide, so view pixels are page units
+    static final int WIDTH = (int) PDFimage.PAGE_WIDTH;
+    static final int HEIGHT = 1300;
+
+    private PDFimage view;
+
+    @Before
+    public void setUp() {
+        view = new PDFimage(RuntimeEnvironment.application);
+        view.setImage(Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888));
+        view.layout(0, 0, WIDTH, HEIGHT);
+    }
+
+    // one finger down at the first point, through the others, and up at the last
+    private void drag(float... points) {
+        long time = SystemClock.uptimeMillis();
+        int last = points.length / 2 - 1;
+        for (int i = 0; i <= last; i++) {
+            int action = i == 0 ? MotionEvent.ACTION_DOWN : MotionEvent.ACTION_MOVE;
+            send(MotionEvent.obtain(time, time + i, action, points[i * 2], points[i * 2 + 1], 0));
+        }
+        send(MotionEvent.obtain(time, time + last + 1, MotionEvent.ACTION_UP, points[last * 2], points[last * 2 + 1], 0));
+    }
+
+    private void send(MotionEvent event) {
+        view.onTouchEvent(event);
+        event.recycle();
+    }
+
+    private ArrayList<Stroke> penStrokes() {
+        return view.pathMap.get(0).first;
+    }
+
+    private int indexed() {
+        return view.indexMap.get(0).query(0, 0, WIDTH, HEIGHT).size();
+    }
+
+    @Test
+    public void splitStrokeComesBackInOneUndo() {
+        view.setTool(Tool.PEN);
+        drag(100, 500, 500, 500, 900, 500);
+        assertEquals(1, penStrokes().size());
+        Stroke drawn = penStrokes().get(0);
+
+        // a partial erase across the middle leaves the two ends
+        view.setPartialErase(true);
+        view.setTool(Tool.ERASER);
+        drag(500, 300, 500, 700);
+        assertEquals(2, penStrokes().size());
+        assertFalse(penStrokes().contains(drawn));
+        assertEquals(2, indexed());
+
+        // one undo takes both pieces away and puts the original back
+        assertEquals(0, view.undo());
+        assertEquals(1, penStrokes().size());
+        assertSame(drawn, penStrokes().get(0));
+        assertEquals(1, indexed());
+
+        // and one redo splits it again
+        assertEquals(0, view.redo());
+        assertEquals(2, penStrokes().size());
+        assertFalse(penStrokes().contains(drawn));
+        assertEquals(2, indexed());
+    }
+}
@@ -0,0 +1,63 @@
+package ca.uwaterloo.cs349.pdfreader;
+
+import android.graphics.Bitmap;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+
+// What a cached page costs at each quality, and which quality a budget buys.
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class RenderQualityTest {
+
+    static final int WIDTH = 1280;
+    static final int LETTER_HEIGHT = Math.round(WIDTH * RenderSizePolicy.DEFAULT_PAGE_ASPECT);
+
+    @Test
+    public void bytesPerCachedPage() {
+        // a letter page at 1280px is 1280 x 1656, converted the way PageRenderer does before caching
+        BitmapPool pool = new BitmapPool(0);
+        long[] expected = {1280L * 1656 * 4, 1280L * 1656 * 2, 1280L * 1656};
+        for (RenderQuality quality : RenderQuality.values()) {
+            Bitmap render = Bitmap.createBitmap(WIDTH, LETTER_HEIGHT, Bitmap.Config.ARGB_8888);
+            Bitmap cached = quality.convert(render, pool);
+            assertEquals(quality.toString(), expected[quality.ordinal()], cached.getByteCount());
+            // what choose() budgets with is what the cache is charged
+            assertEquals(quality.toString(), quality.bytesPerPage(WIDTH, LETTER_HEIGHT), cached.getByteCount());
+        }
+    }
+
+    @Test
+    public void bestQualityThatFitsTheBudget() {
+        int pages = RenderQuality.MIN_CACHED_PAGES;
+        long argb = RenderQuality.ARGB_8888.bytesPerPage(WIDTH, LETTER_HEIGHT) * pages;
+        assertEquals(RenderQuality.ARGB_8888, RenderQuality.choose((int) argb, WIDTH, LETTER_HEIGHT));
+        assertEquals(RenderQuality.RGB_565, RenderQuality.choose((int) argb - 1, WIDTH, LETTER_HEIGHT));
+        assertEquals(RenderQuality.GRAYSCALE, RenderQuality.choose((int) argb / 2 - 1, WIDTH, LETTER_HEIGHT));
+        // nothing fits: the cheapest is still the best there is
+        assertEquals(RenderQuality.GRAYSCALE, RenderQuality.choose(0, WIDTH, LETTER_HEIGHT));
+    }
+
+    @Test
+    public void choiceFollowsTheDocumentsPages() {
+        // slides (4:3 landscape) cost less per page than letter, tall receipts cost more
+        PageGeometry slides = new PageGeometry(new int[]{720, 720}, new int[]{540, 540});
+        PageGeometry receipts = new PageGeometry(new int[]{300, 300}, new int[]{900, 900});
+        int budget = (int) RenderQuality.ARGB_8888.bytesPerPage(WIDTH, LETTER_HEIGHT) * RenderQuality.MIN_CACHED_PAGES;
+        assertEquals(RenderQuality.ARGB_8888,
+                RenderQuality.choose(budget, WIDTH, Math.round(WIDTH * slides.getMeanAspect())));
+        assertEquals(RenderQuality.GRAYSCALE,
+                RenderQuality.choose(budget, WIDTH, Math.round(WIDTH * receipts.getMeanAspect())));
+    }
+
+    @Test
+    public void meanAspectOfMixedPages() {
+        PageGeometry mixed = new PageGeometry(new int[]{100, 100}, new int[]{100, 200});
+        assertEquals(1.5f, mixed.getMeanAspect(), 0.0001f);
+        assertEquals(RenderSizePolicy.DEFAULT_PAGE_ASPECT, new PageGeometry(new int[0], new int[0]).getMeanAspect(), 0);
+    }
+}
@@ -0,0 +1,108 @@
+package ca.uwaterloo.cs349.pdfreader;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+// Eraser hit tests against a brute force answer: the stroke is walked in small steps and
+// each step is measured against the eraser's path directly.
+public class StrokeHitTest {
+
+    static final int CASES = 20000;
+    static final int STEPS = 400; // per stroke segment
+
+    // distance from (x, y) to the segment (x1, y1)-(x2, y2), worked out independently of Stroke
+    private static double distance(double x, double y, double x1, double y1, double x2, double y2) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared == 0 ? 0 : ((x - x1) * dx + (y - y1) * dy) / lengthSquared;
+        t = Math.max(0, Math.min(1, t));
+        return Math.hypot(x1 + t * dx - x, y1 + t * dy - y);
+    }
+
+    // closest the stroke's centre line comes to the eraser's path, to within a step
+    private static double bruteForce(Stroke stroke, float x1, float y1, float x2, float y2) {
+        if (stroke.size() == 1) {
+            return distance(stroke.getX(0), stroke.getY(0), x1, y1, x2, y2);
+        }
+        double closest = Double.MAX_VALUE;
+        for (int i = 0; i < stroke.size() - 1; i++) {
+            for (int step = 0; step <= STEPS; step++) {
+                double t = step / (double) STEPS;
+                double x = stroke.getX(i) + t * (stroke.getX(i + 1) - stroke.getX(i));
+                double y = stroke.getY(i) + t * (stroke.getY(i + 1) - stroke.getY(i));
+                closest = Math.min(closest, distance(x, y, x1, y1, x2, y2));
+            }
+        }
+        return closest;
+    }
+
+    @Test
+    public void capsuleAgreesWithBruteForce() {
+        Random random = new Random(1);
+        int hits = 0;
+        int checked = 0;
+        for (int n = 0; n < CASES; n++) {
+            Stroke stroke = new Stroke(Tool.PEN, 1 + random.nextFloat() * 9);
+            int points = 1 + random.nextInt(4);
+            for (int i = 0; i < points; i++) {
+                stroke.add(random.nextFloat() * 100, random.nextFloat() * 100);
+            }
+            float x1 = random.nextFloat() * 100, y1 = random.nextFloat() * 100;
+            // a quarter of the cases are a tap: the capsule is a circle
+            float x2 = random.nextInt(4) == 0 ? x1 : random.nextFloat() * 100;
+            float y2 = x2 == x1 ? y1 : random.nextFloat() * 100;
+            float radius = random.nextFloat() * 10;
+            float reach = radius + stroke.width / 2;
+
+            double expected = bruteForce(stroke, x1, y1, x2, y2);
+            // steps are at most 100 * sqrt(2) / STEPS long and the walk can miss the closest
+            // point by half of one; cases within a step of the edge are too close to call
+            if (Math.abs(expected - reach) < 100.0 * Math.sqrt(2) / STEPS + 0.001) {
+                continue;
+            }
+            checked++;
+            boolean hit = expected < reach;
+            if (hit) {
+                hits++;
+            }
+            assertEquals("case " + n, hit, stroke.intersectsCapsule(x1, y1, x2, y2, radius));
+            if (x1 == x2 && y1 == y2) {
+                assertEquals("case " + n, hit, stroke.intersectsCircle(x1, y1, radius));
+            }
+        }
+        // both answers are well represented
+        assertTrue(hits > checked / 10);
+        assertTrue(hits < checked * 9 / 10);
+    }
+
+    @Test
+    public void crossingIsAHitWhateverTheRadius() {
+        Stroke stroke = new Stroke(Tool.PEN, 0);
+        stroke.add(0, 0);
+        stroke.add(100, 100);
+        assertTrue(stroke.intersectsCapsule(0, 100, 100, 0, 0));
+    }
+
+    @Test
+    public void sweepPastTheEndMisses() {
+        Stroke stroke = new Stroke(Tool.PEN, 4);
+        stroke.add(0, 0);
+        stroke.add(100, 0);
+        // parallel, 10 above: out of reach of a radius 7 eraser (7 + 2 < 10), in reach of 9
+        assertFalse(stroke.intersectsCapsule(0, 10, 100, 10, 7));
+        assertTrue(stroke.intersectsCapsule(0, 10, 100, 10, 9));
+        // in line with the stroke, beyond its end
+        assertFalse(stroke.intersectsCapsule(120, 0, 200, 0, 10));
+    }
+
+    @Test
+    public void emptyStrokeIsNeverHit() {
+        assertFalse(new Stroke(Tool.PEN, 4).intersectsCircle(0, 0, 100));
+    }
+}
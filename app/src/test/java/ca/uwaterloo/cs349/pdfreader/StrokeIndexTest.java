@@ -0,0 +1,133 @@
+package ca.uwaterloo.cs349.pdfreader;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+// Finding strokes near the eraser, and how long an erase takes on a heavily annotated page.
+public class StrokeIndexTest {
+
+    static final float PAGE_HEIGHT = PDFimage.PAGE_WIDTH * RenderSizePolicy.DEFAULT_PAGE_ASPECT;
+    static final int BENCHMARK_STROKES = 10000;
+    static final int BENCHMARK_ERASES = 1000;
+    static final float RADIUS = 15;
+
+    private static Stroke line(float x1, float y1, float x2, float y2) {
+        Stroke stroke = new Stroke(Tool.PEN, 4);
+        stroke.add(x1, y1);
+        stroke.add(x2, y2);
+        return stroke;
+    }
+
+    // a short scribble somewhere on the page, like handwriting
+    private static Stroke scribble(Random random) {
+        Stroke stroke = new Stroke(random.nextBoolean() ? Tool.PEN : Tool.MARKER, random.nextBoolean() ? 4 : 24);
+        float x = random.nextFloat() * PDFimage.PAGE_WIDTH;
+        float y = random.nextFloat() * PAGE_HEIGHT;
+        for (int i = 0; i < 20; i++) {
+            stroke.add(x, y);
+            x += random.nextFloat() * 10 - 5;
+            y += random.nextFloat() * 10 - 5;
+        }
+        return stroke;
+    }
+
+    @Test
+    public void findsStrokesNearTheQuery() {
+        StrokeIndex index = new StrokeIndex();
+        Stroke near = line(10, 10, 50, 10);
+        Stroke far = line(900, 900, 950, 900);
+        index.add(near);
+        index.add(far);
+        assertTrue(index.query(40, 0, 60, 20).contains(near));
+        assertFalse(index.query(40, 0, 60, 20).contains(far));
+        // half the stroke width counts: the edge of a 4 wide line at y = 10 reaches y = 12
+        assertTrue(index.query(40, 11.5f, 60, 30).contains(near));
+    }
+
+    @Test
+    public void strokeAcrossCellsIsFoundOnce() {
+        StrokeIndex index = new StrokeIndex();
+        Stroke across = line(0, 0, StrokeIndex.CELL_SIZE * 5, StrokeIndex.CELL_SIZE * 3);
+        index.add(across);
+        assertEquals(1, index.query(0, 0, StrokeIndex.CELL_SIZE * 5, StrokeIndex.CELL_SIZE * 3).size());
+    }
+
+    @Test
+    public void removedStrokesAreGone() {
+        StrokeIndex index = new StrokeIndex();
+        Stroke stroke = line(-300, -300, 300, 300);
+        index.add(stroke);
+        index.remove(stroke);
+        assertTrue(index.query(-1000, -1000, 1000, 1000).isEmpty());
+        index.add(stroke);
+        index.clear();
+        assertTrue(index.query(-1000, -1000, 1000, 1000).isEmpty());
+    }
+
+    // what PDFimage.erase does for a tap, with and without the index
+    private static HashSet<Stroke> eraseWithIndex(StrokeIndex index, float x, float y) {
+        HashSet<Stroke> hit = new HashSet<>();
+        for (Stroke stroke : index.query(x - RADIUS, y - RADIUS, x + RADIUS, y + RADIUS)) {
+            if (stroke.intersectsCircle(x, y, RADIUS)) {
+                hit.add(stroke);
+            }
+        }
+        return hit;
+    }
+
+    private static HashSet<Stroke> eraseByScan(ArrayList<Stroke> strokes, float x, float y) {
+        HashSet<Stroke> hit = new HashSet<>();
+        for (Stroke stroke : strokes) {
+            if (stroke.intersectsCircle(x, y, RADIUS)) {
+                hit.add(stroke);
+            }
+        }
+        return hit;
+    }
+
+    @Test
+    public void eraseLatencyOnTenThousandStrokes() {
+        Random random = new Random(7);
+        ArrayList<Stroke> strokes = new ArrayList<>();
+        StrokeIndex index = new StrokeIndex();
+        for (int i = 0; i < BENCHMARK_STROKES; i++) {
+            Stroke stroke = scribble(random);
+            strokes.add(stroke);
+            index.add(stroke);
+        }
+        float[] taps = new float[BENCHMARK_ERASES * 2];
+        for (int i = 0; i < BENCHMARK_ERASES; i++) {
+            taps[i * 2] = random.nextFloat() * PDFimage.PAGE_WIDTH;
+            taps[i * 2 + 1] = random.nextFloat() * PAGE_HEIGHT;
+        }
+
+        // same answer either way
+        int hits = 0;
+        for (int i = 0; i < BENCHMARK_ERASES; i++) {
+            HashSet<Stroke> expected = eraseByScan(strokes, taps[i * 2], taps[i * 2 + 1]);
+            assertEquals(expected, eraseWithIndex(index, taps[i * 2], taps[i * 2 + 1]));
+            hits += expected.size();
+        }
+        assertTrue(hits > 0);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_ERASES; i++) {
+            eraseWithIndex(index, taps[i * 2], taps[i * 2 + 1]);
+        }
+        long indexed = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_ERASES; i++) {
+            eraseByScan(strokes, taps[i * 2], taps[i * 2 + 1]);
+        }
+        long scanned = System.nanoTime() - start;
+        System.out.println(BENCHMARK_STROKES + " strokes: " + indexed / BENCHMARK_ERASES / 1000 + "us per erase with the index, "
+                + scanned / BENCHMARK_ERASES / 1000 + "us scanning every stroke");
+    }
+}
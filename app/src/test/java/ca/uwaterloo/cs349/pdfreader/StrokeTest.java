@@ -0,0 +1,146 @@
+package ca.uwaterloo.cs349.pdfreader;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+// The point storage of a stroke: growing, bounds, and what it costs per point; and what is
+// left of it after a partial erase.
+public class StrokeTest {
+
+    // eraser radius plus half the width of the strokes cut below
+    static final float RADIUS = 10;
+    static final float WIDTH = 2;
+    static final float REACH = RADIUS + WIDTH / 2;
+
+    @Test
+    public void startsEmpty() {
+        Stroke stroke = new Stroke(Tool.PEN, 5);
+        assertEquals(0, stroke.size());
+        assertEquals(Tool.PEN, stroke.tool);
+        assertEquals(5f, stroke.width, 0);
+    }
+
+    @Test
+    public void growsPastItsInitialCapacity() {
+        Stroke stroke = new Stroke(Tool.PEN, 5);
+        int count = Stroke.INITIAL_CAPACITY * 10 + 3;
+        for (int i = 0; i < count; i++) {
+            stroke.add(i, -i * 2);
+        }
+        assertEquals(count, stroke.size());
+        // every point survives the copies
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, stroke.getX(i), 0);
+            assertEquals(-i * 2, stroke.getY(i), 0);
+        }
+    }
+
+    @Test
+    public void boundsCoverEveryPoint() {
+        Stroke stroke = new Stroke(Tool.MARKER, 30);
+        stroke.add(10, 20);
+        assertEquals(10, stroke.getLeft(), 0);
+        assertEquals(10, stroke.getRight(), 0);
+        assertEquals(20, stroke.getTop(), 0);
+        assertEquals(20, stroke.getBottom(), 0);
+        stroke.add(-5, 40);
+        stroke.add(25, 15);
+        assertEquals(-5, stroke.getLeft(), 0);
+        assertEquals(25, stroke.getRight(), 0);
+        assertEquals(15, stroke.getTop(), 0);
+        assertEquals(40, stroke.getBottom(), 0);
+    }
+
+    @Test
+    public void retainedBytesFollowTheCapacity() {
+        Stroke stroke = new Stroke(Tool.PEN, 5);
+        assertEquals(Stroke.OVERHEAD_BYTES + Stroke.INITIAL_CAPACITY * 8, stroke.getRetainedBytes());
+        for (int i = 0; i < Stroke.INITIAL_CAPACITY; i++) {
+            stroke.add(i, i);
+        }
+        assertEquals(Stroke.OVERHEAD_BYTES + Stroke.INITIAL_CAPACITY * 8, stroke.getRetainedBytes());
+        // one more point doubles the array
+        stroke.add(0, 0);
+        assertEquals(Stroke.OVERHEAD_BYTES + Stroke.INITIAL_CAPACITY * 2 * 8, stroke.getRetainedBytes());
+    }
+
+    @Test
+    public void memoryPerPoint() {
+        // two floats a point, at most doubled by growth
+        for (int count : new int[]{10, 100, 1000, 10000}) {
+            Stroke stroke = new Stroke(Tool.PEN, 5);
+            for (int i = 0; i < count; i++) {
+                stroke.add(i, i);
+            }
+            float perPoint = stroke.getRetainedBytes() / (float) count;
+            System.out.println(count + " points: " + stroke.getRetainedBytes() + " bytes, "
+                    + String.format("%.1f", perPoint) + " bytes per point");
+            assertTrue(stroke.getRetainedBytes() <= Stroke.OVERHEAD_BYTES + Math.max(count, Stroke.INITIAL_CAPACITY) * 2 * 8);
+        }
+    }
+
+    // a straight stroke from (0, 0) to (200, 0), a point every 10 units
+    private static Stroke line() {
+        Stroke stroke = new Stroke(Tool.PEN, WIDTH);
+        for (int x = 0; x <= 200; x += 10) {
+            stroke.add(x, 0);
+        }
+        return stroke;
+    }
+
+    private static void assertPiece(Stroke piece, float fromX, float toX) {
+        assertEquals(Tool.PEN, piece.tool);
+        assertEquals(WIDTH, piece.width, 0);
+        assertEquals(fromX, piece.getX(0), 0.01f);
+        assertEquals(toX, piece.getX(piece.size() - 1), 0.01f);
+        for (int i = 0; i < piece.size(); i++) {
+            assertEquals(0, piece.getY(i), 0);
+            if (i > 0) {
+                assertTrue(piece.getX(i) > piece.getX(i - 1));
+            }
+        }
+    }
+
+    @Test
+    public void cutThatMissesReturnsNull() {
+        // inside the bounds of an L, but out of reach of both of its arms
+        Stroke stroke = line();
+        stroke.add(200, 200);
+        assertNull(stroke.cut(new float[]{100, 100, 110, 110}, 2, RADIUS));
+        // out of reach of the bounds
+        assertNull(line().cut(new float[]{100, REACH + 1, 120, REACH + 1}, 2, RADIUS));
+    }
+
+    @Test
+    public void cutInTheMiddleLeavesTwoPieces() {
+        ArrayList<Stroke> pieces = line().cut(new float[]{100, -50, 100, 50}, 2, RADIUS);
+        assertEquals(2, pieces.size());
+        assertPiece(pieces.get(0), 0, 100 - REACH);
+        assertPiece(pieces.get(1), 100 + REACH, 200);
+        // every point the eraser missed is kept: 0 to 80 and the cut, then the cut and 120 to 200
+        assertEquals(10, pieces.get(0).size());
+        assertEquals(10, pieces.get(1).size());
+    }
+
+    @Test
+    public void cutAtTheEndLeavesOnePiece() {
+        ArrayList<Stroke> pieces = line().cut(new float[]{200, -50, 200, 50}, 2, RADIUS);
+        assertEquals(1, pieces.size());
+        assertPiece(pieces.get(0), 0, 200 - REACH);
+        // a single eraser position at the start works the same way
+        pieces = line().cut(new float[]{0, 0}, 1, RADIUS);
+        assertEquals(1, pieces.size());
+        assertPiece(pieces.get(0), REACH, 200);
+    }
+
+    @Test
+    public void cutCoveringEverythingLeavesNothing() {
+        ArrayList<Stroke> pieces = line().cut(new float[]{-5, 0, 100, 3, 205, 0}, 3, RADIUS);
+        assertEquals(0, pieces.size());
+    }
+}